@@ -3,18 +3,21 @@
 package loa;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.regex.Pattern;
 import java.util.Collections;
 import java.util.Formatter;
-import java.util.Objects;
+import java.util.Random;
 
 import static loa.Piece.*;
 import static loa.Square.*;
 
-/** Represents the state of a game of Lines of Action.
+/** Represents the state of a game of Lines of Action.  The pieces of
+ *  each side are kept as a bitboard: a long whose bit S.index() is set
+ *  iff the side has a piece on square S.  The lines and rays through
+ *  each square are precomputed as masks and neighbours are found by
+ *  shifts, so counting pieces on a line, testing for blocking pieces and
+ *  finding connected groups are all done with a few bit operations.
  *  @author Ayela Chughtai
  */
 class Board {
@@ -70,7 +73,7 @@ class Board {
             set(sq, contents[sq.row()][sq.col()]);
         }
         _moves.clear();
-        _turn = side;
+        setTurn(side);
         _moveLimit = DEFAULT_MOVE_LIMIT;
         _winnerKnown = false;
         _subsetsInitialized = false;
@@ -90,14 +93,14 @@ class Board {
         if (board == this) {
             return;
         } else {
-            for (Square sq: ALL_SQUARES) {
-                _board[sq.index()] = board.get(sq);
-            }
+            _black = board._black;
+            _white = board._white;
         }
         _moves.clear();
         _moves.addAll(board._moves);
         _turn = board._turn;
-        _subsetsInitialized = board._subsetsInitialized;
+        _key = board._key;
+        _subsetsInitialized = false;
         _winnerKnown = false;
         _moveLimit = DEFAULT_MOVE_LIMIT;
     }
@@ -106,7 +109,21 @@ class Board {
      * Return the contents of the square at SQ.
      */
     Piece get(Square sq) {
-        return _board[sq.index()];
+        return get(sq.index());
+    }
+
+    /**
+     * Return the contents of the square whose index is INDEX.
+     */
+    private Piece get(int index) {
+        long bit = 1L << index;
+        if ((_black & bit) != 0) {
+            return BP;
+        } else if ((_white & bit) != 0) {
+            return WP;
+        } else {
+            return EMP;
+        }
     }
     /**
      * Returns white region sizes.
@@ -128,14 +145,33 @@ class Board {
     void set(Square sq, Piece v, Piece next) {
         assert sq != null;
         assert v != null;
-        if (next == null) {
-            _board[sq.index()] = v;
-        } else {
-            _board[sq.index()] = v;
-            _turn = next;
+        int index = sq.index();
+        long bit = 1L << index;
+        _key ^= zobrist(get(index), index) ^ zobrist(v, index);
+        _black &= ~bit;
+        _white &= ~bit;
+        if (v == BP) {
+            _black |= bit;
+        } else if (v == WP) {
+            _white |= bit;
+        }
+        if (next != null) {
+            setTurn(next);
         }
     }
 
+    /** Set the side that is to move next to SIDE, keeping my Zobrist key
+     *  up to date. */
+    private void setTurn(Piece side) {
+        if (_turn == WP) {
+            _key ^= ZOBRIST_WHITE_TO_MOVE;
+        }
+        if (side == WP) {
+            _key ^= ZOBRIST_WHITE_TO_MOVE;
+        }
+        _turn = side;
+    }
+
     /**
      * Set the square at SQ to V, without modifying the side that
      * moves next.
@@ -165,7 +201,7 @@ class Board {
      *  the capturing move. */
     void makeMove(Move move) {
         assert isLegal(move);
-        Piece to = _board[move.getTo().index()];
+        Piece to = get(move.getTo());
         set(move.getFrom(), EMP);
         if (to == _turn.opposite()) {
             _moves.add(0, move.captureMove());
@@ -173,7 +209,7 @@ class Board {
             _moves.add(0, move);
         }
         set(move.getTo(), _turn);
-        _turn = _turn.opposite();
+        setTurn(_turn.opposite());
         _winnerKnown = false;
         _subsetsInitialized = false;
         if (winner() != null) {
@@ -194,7 +230,7 @@ class Board {
         } else {
             set(move.getTo(), _turn);
         }
-        _turn =  _turn.opposite();
+        setTurn(_turn.opposite());
         _winnerKnown = false;
         _subsetsInitialized = false;
     }
@@ -211,32 +247,14 @@ class Board {
      * move.
      */
     boolean isLegal(Square from, Square to) {
-        if (from == to) {
-            return false;
-        }
-        if (piecesOnLine(from, from.direction(to))
-                != from.distance(to)) {
-            return false;
-        }
-        if (blocked(from, to)) {
-            return false;
-        }
-        if (_board[from.index()] == null) {
-            return false;
-        }
-        if (_board[from.index()] != turn()) {
-            return false;
-        }
-        if (_board[from.index()] == EMP) {
+        if (!from.isValidMove(to) || get(from) != turn()) {
             return false;
         }
         int dir = from.direction(to);
-        int steps = piecesOnLine(from, from.direction(to));
-        if (from.moveDest(dir, steps) != null) {
-            return get(Objects.requireNonNull(
-                    from.moveDest(dir, steps))) == get(to);
+        if (piecesOnLine(from, dir) != from.distance(to)) {
+            return false;
         }
-        return true;
+        return !blocked(from, to);
     }
 
     /**
@@ -251,84 +269,36 @@ class Board {
      * Return a sequence of all legal moves from this position.
      */
     List<Move> legalMoves() {
-        LinkedList<Move> moves = new LinkedList<>();
-        for (Square sq : ALL_SQUARES) {
-            if (_board[sq.index()] == turn()
-                    && legalMovesFromSquare(sq) != null) {
-                for (Move move : legalMovesFromSquare(sq)) {
-                    if (move != null) {
-                        moves.add(move);
-                    }
+        ArrayList<Move> moves = new ArrayList<>();
+        long own = _turn == BP ? _black : _white;
+        long other = _turn == BP ? _white : _black;
+        long occupied = _black | _white;
+        for (long pieces = own; pieces != 0; pieces &= pieces - 1) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            for (int dir = 0; dir < 8; dir += 1) {
+                int steps = Long.bitCount(occupied & LINES[from][dir & 3]);
+                int to = DESTS[from][dir][steps];
+                if (to < 0 || (own & (1L << to)) != 0
+                        || (other & between(from, to, dir)) != 0) {
+                    continue;
                 }
+                moves.add(Move.mv(ALL_SQUARES[from], ALL_SQUARES[to],
+                                  (other & (1L << to)) != 0));
             }
         }
         return moves;
     }
 
-    /**
-     * Returns all legal moves from square.
-     * @param sq square.
-     */
-    LinkedList<Move> legalMovesFromSquare(Square sq) {
-        Move move;
-        LinkedList<Move> result = new LinkedList<>();
-        for (int dir = 0; dir < 8; dir++) {
-            move = legalMoveInDirection(sq, dir);
-            if (move != null && isLegal(move)) {
-                result.add(move);
-            }
-        }
-        return result;
-    }
-
-    /** Return legal move from this position
-     * in direction dir.
-     * @param sq square.
-     * @param direction direction.
-     * */
-    Move legalMoveInDirection(Square sq, int direction) {
-        Move move = null;
-        Square to = sq.moveDest(direction,
-                piecesOnLine(sq, direction));
-        if (to != null && isLegal(sq, to)) {
-            if (_board[to.index()].equals(
-                            _board[sq.index()].opposite())) {
-                move = Move.mv(sq, to, true);
-            } else {
-                move = Move.mv(sq, to, false);
-            }
-        }
-        return move;
-    }
-
-    /** Return number of pieces on a line.
+    /** Return number of pieces on a line, counting the square SQ itself
+     * whether or not it is occupied.
      * @param sq square.
      * @param direction direction.
      * @return int.
      * */
     int piecesOnLine(Square sq, int direction) {
-        Integer[] piecesInDir = new Integer[8];
-        for (int dir = 0; dir < 8; dir += 1) {
-            piecesInDir[dir] = 0;
-            for (int step = 1; step < 8; step++) {
-                if (sq.moveDest(dir, step) != null) {
-                    if (!_board[sq.moveDest(dir, step).index()].equals(EMP)) {
-                        piecesInDir[dir] += 1;
-                    }
-                }
-            }
-        }
-        if (direction == 0 || direction == 4) {
-            return piecesInDir[0] + piecesInDir[4] + 1;
-        } else if (direction == 1 || direction == 5) {
-            return piecesInDir[1] + piecesInDir[5] + 1;
-        } else if (direction == 2 || direction == 6) {
-            return piecesInDir[2] + piecesInDir[6] + 1;
-        } else if (direction == 3 || direction == 7) {
-            return piecesInDir[3] + piecesInDir[7] + 1;
-        } else {
-            return 0;
-        }
+        int index = sq.index();
+        return Long.bitCount((_black | _white) & LINES[index][direction & 3]
+                             & ~(1L << index)) + 1;
     }
 
     /** Return true iff the game is over (either player has all his
@@ -365,6 +335,15 @@ class Board {
         return _winner;
     }
 
+    /** Return the Zobrist key of this position: the exclusive or of a
+     *  random number for each piece on each square, and of another if
+     *  white is to move.  Positions reached by different orders of moves
+     *  have the same key.  It is updated as pieces are set, so it costs
+     *  nothing to fetch. */
+    long zobristKey() {
+        return _key;
+    }
+
     /** Return the total number of moves that have been made (and not
      *  retracted).  Each valid call to makeMove with a normal move increases
      *  this number by 1. */
@@ -375,12 +354,12 @@ class Board {
     @Override
     public boolean equals(Object obj) {
         Board b = (Board) obj;
-        return Arrays.deepEquals(_board, b._board) && _turn == b._turn;
+        return _black == b._black && _white == b._white && _turn == b._turn;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.deepHashCode(_board) * 2 + _turn.hashCode();
+        return (int) (_key ^ (_key >>> 32));
     }
 
     @Override
@@ -401,45 +380,42 @@ class Board {
     /** Return true if a move from FROM to TO is blocked by an opposing
      *  piece or by a friendly piece on the target square. */
     private boolean blocked(Square from, Square to) {
-        boolean blocked = false;
-        int fromIndex = from.index();
-        int toIndex = to.index();
-        int direction = from.direction(to);
-        for (Square cur = from.moveDest(direction, 1);
-             cur != to; cur = cur.moveDest(direction, 1)) {
-            assert cur != null;
-            int currIndex = cur.index();
-            if (_board[currIndex].abbrev().equals(
-                    Objects.requireNonNull(_board[fromIndex].opposite())
-                            .abbrev())) {
-                blocked = true;
-            }
-        }
-        if (_board[toIndex].abbrev().equals(_board[fromIndex].abbrev())) {
-            blocked = true;
+        long own = get(from) == BP ? _black : _white;
+        long other = get(from) == BP ? _white : _black;
+        int fromIndex = from.index(), toIndex = to.index();
+        return (own & (1L << toIndex)) != 0
+            || (other & between(fromIndex, toIndex,
+                                from.direction(to))) != 0;
+    }
+
+    /** Return the squares strictly between the squares whose indices are
+     *  FROM and TO, which lie in direction DIR from FROM. */
+    private static long between(int from, int to, int dir) {
+        return RAYS[from][dir] & ~RAYS[to][dir] & ~(1L << to);
+    }
+
+    /** Return the squares in PIECES that are connected to those in GROUP
+     *  through adjacent squares of PIECES, including GROUP itself. */
+    private static long grow(long group, long pieces) {
+        long next = group;
+        do {
+            group = next;
+            long vertical = group | (group << 8) | (group >>> 8);
+            next = (vertical | ((vertical & ~COLUMN_H) << 1)
+                    | ((vertical & ~COLUMN_A) >>> 1)) & pieces;
+        } while (next != group);
+        return group;
+    }
+
+    /** Add to SIZES the sizes of the connected groups of PIECES, largest
+     *  first. */
+    private static void regionSizes(long pieces, ArrayList<Integer> sizes) {
+        while (pieces != 0) {
+            long group = grow(pieces & -pieces, pieces);
+            sizes.add(Long.bitCount(group));
+            pieces &= ~group;
         }
-        return blocked;
-    }
-
-    /** Return the size of the as-yet unvisited cluster of squares
-     *  containing P at and adjacent to SQ.  VISITED indicates squares that
-     *  have already been processed or are in different clusters.  Update
-     *  VISITED to reflect squares counted. */
-    private int numContig(Square sq, boolean[][] visited, Piece p) {
-        assert get(sq) != null;
-        assert p != null;
-        assert visited[sq.row()][sq.col()] || !visited[sq.row()][sq.col()];
-        if (p == EMP || get(sq) != p || visited[sq.row()][sq.col()]) {
-            return 0;
-        }
-        if (get(sq) == p && !visited[sq.row()][sq.col()]) {
-            visited[sq.row()][sq.col()] = true;
-        }
-        int output = 1;
-        for (Square square: sq.adjacent()) {
-            output += numContig(square, visited, p);
-        }
-        return output;
+        Collections.sort(sizes, Collections.reverseOrder());
     }
 
     /** Set the values of _whiteRegionSizes and _blackRegionSizes. */
@@ -449,22 +425,8 @@ class Board {
         }
         _whiteRegionSizes.clear();
         _blackRegionSizes.clear();
-        boolean[][] visited = new boolean[BOARD_SIZE][BOARD_SIZE];
-        for (Square sq: ALL_SQUARES) {
-            Piece p = _board[sq.index()];
-            if (!visited[sq.row()][sq.col()]) {
-                int num = numContig(sq, visited, p);
-                if (num > 0) {
-                    if (p == WP) {
-                        _whiteRegionSizes.add(num);
-                    } else if (p == BP) {
-                        _blackRegionSizes.add(num);
-                    }
-                }
-            }
-        }
-        Collections.sort(_whiteRegionSizes, Collections.reverseOrder());
-        Collections.sort(_blackRegionSizes, Collections.reverseOrder());
+        regionSizes(_white, _whiteRegionSizes);
+        regionSizes(_black, _blackRegionSizes);
         _subsetsInitialized = true;
     }
 
@@ -492,13 +454,85 @@ class Board {
         { EMP, BP,  BP,  BP,  BP,  BP,  BP,  EMP }
     };
 
-    /** Current contents of the board.  Square S is at _board[S.index()]. */
-    private final Piece[] _board = new Piece[BOARD_SIZE  * BOARD_SIZE];
+    /** Return the Zobrist number of piece P at square INDEX, or 0 if P is
+     *  EMP or null. */
+    private static long zobrist(Piece p, int index) {
+        if (p == BP) {
+            return ZOBRIST_PIECES[index];
+        } else if (p == WP) {
+            return ZOBRIST_PIECES[NUM_SQUARES + index];
+        } else {
+            return 0;
+        }
+    }
+
+    /** Seed of the Zobrist numbers, fixed so that keys are the same in
+     *  every run. */
+    private static final long ZOBRIST_SEED = 0x61B_10AL;
+
+    /** Random numbers for a black piece at each square, followed by those
+     *  for a white piece at each square. */
+    private static final long[] ZOBRIST_PIECES = new long[2 * NUM_SQUARES];
+
+    /** Random number included in the key when white is to move. */
+    private static final long ZOBRIST_WHITE_TO_MOVE;
+
+    static {
+        Random random = new Random(ZOBRIST_SEED);
+        for (int i = 0; i < ZOBRIST_PIECES.length; i += 1) {
+            ZOBRIST_PIECES[i] = random.nextLong();
+        }
+        ZOBRIST_WHITE_TO_MOVE = random.nextLong();
+    }
+
+    /** The squares of the leftmost column (a). */
+    private static final long COLUMN_A = 0x0101010101010101L;
+
+    /** The squares of the rightmost column (h). */
+    private static final long COLUMN_H = COLUMN_A << (BOARD_SIZE - 1);
+
+    /** RAYS[S][D] holds the squares reached from the square with index S
+     *  by one or more steps in direction D. */
+    private static final long[][] RAYS = new long[NUM_SQUARES][8];
+
+    /** LINES[S][D] holds the squares on the line through the square with
+     *  index S in directions D and D + 4, including S itself, for D < 4. */
+    private static final long[][] LINES = new long[NUM_SQUARES][4];
+
+    /** DESTS[S][D][N] is the index of the square N steps from the square
+     *  with index S in direction D, or -1 if it is off the board. */
+    private static final int[][][] DESTS = new int[NUM_SQUARES][8][9];
+
+    static {
+        for (Square sq : ALL_SQUARES) {
+            int s = sq.index();
+            for (int dir = 0; dir < 8; dir += 1) {
+                DESTS[s][dir][0] = s;
+                for (int steps = 1; steps <= 8; steps += 1) {
+                    Square dest = sq.moveDest(dir, steps);
+                    DESTS[s][dir][steps] = dest == null ? -1 : dest.index();
+                    if (dest != null) {
+                        RAYS[s][dir] |= 1L << dest.index();
+                    }
+                }
+            }
+            for (int dir = 0; dir < 4; dir += 1) {
+                LINES[s][dir] = RAYS[s][dir] | RAYS[s][dir + 4] | (1L << s);
+            }
+        }
+    }
+
+    /** Squares holding black pieces, as a bitboard. */
+    private long _black;
+    /** Squares holding white pieces, as a bitboard. */
+    private long _white;
 
     /** List of all unretracted moves on this board, in order. */
     private final ArrayList<Move> _moves = new ArrayList<>();
     /** Current side on move. */
     private Piece _turn;
+    /** Zobrist key of the current position. */
+    private long _key;
     /** Limit on number of moves before tie is declared.  */
     private int _moveLimit;
     /** True iff the value of _winner is known to be valid. */
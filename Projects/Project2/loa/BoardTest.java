@@ -160,4 +160,25 @@ public class BoardTest {
                      0, b1.movesMade());
     }
 
+    @Test
+    public void testZobristKey() {
+        Board b0 = new Board();
+        Board b1 = new Board();
+        b1.makeMove(mv("b1-b3"));
+        assertNotEquals("key after b1-b3", b0.zobristKey(), b1.zobristKey());
+        b1.retract();
+        assertEquals("key restored after retraction",
+                     b0.zobristKey(), b1.zobristKey());
+        b0.makeMove(mv("b1-b3"));
+        b0.makeMove(mv("h7-f7"));
+        b0.makeMove(mv("c1-c3"));
+        b1.makeMove(mv("c1-c3"));
+        b1.makeMove(mv("h7-f7"));
+        b1.makeMove(mv("b1-b3"));
+        assertEquals("key of transposed moves",
+                     b0.zobristKey(), b1.zobristKey());
+        assertEquals("key of copy", b0.zobristKey(),
+                     new Board(b0).zobristKey());
+    }
+
 }
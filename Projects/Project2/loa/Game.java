@@ -22,6 +22,9 @@ class Game {
     static final int MILLISEC = 1000;
     /** Name of help text resource. */
     static final String HELP_FILE = "loa/HelpText.txt";
+    /** Default time allowed to an automated player for each move, in
+     *  seconds. */
+    static final double DEFAULT_TIME_LIMIT = 0.25;
 
     /** Controller for one or more games of LOA, using
      *  MANUALPLAYERTEMPLATE as an exemplar for manual players
@@ -53,6 +56,12 @@ class Game {
         return _board;
     }
 
+    /** Return the time allowed to an automated player for each move, in
+     *  milliseconds. */
+    long timeLimit() {
+        return _timeLimit;
+    }
+
     /** Quit the game. */
     private void quit() {
         System.exit(0);
@@ -118,7 +127,11 @@ class Game {
                            command.group(4).toLowerCase());
                 break;
             case "limit":
-                limitCommand(command.group(2));
+                if (command.group(2).equalsIgnoreCase("time")) {
+                    timeLimitCommand(command.group(3));
+                } else {
+                    limitCommand(command.group(2));
+                }
                 break;
             case "?": case "help":
                 help();
@@ -295,6 +308,22 @@ class Game {
         }
     }
 
+    /** Set the time allowed to an automated player for each move to the
+     *  number of seconds in SECONDS, which must be a positive numeral of
+     *  less than 2**31 milliseconds. */
+    private void timeLimitCommand(String seconds) {
+        try {
+            double limit = Double.parseDouble(seconds);
+            if (!(limit > 0) || limit * MILLISEC > Integer.MAX_VALUE) {
+                error("invalid time limit: %s%n", seconds);
+            } else {
+                _timeLimit = Math.max(1, Math.round(limit * MILLISEC));
+            }
+        } catch (NumberFormatException excp) {
+            error("Invalid number: %s%n", seconds);
+        }
+    }
+
     /** Perform the move designated by LINE, if a valid move.  Return
      *  true iff LINE has the syntax of a move. */
     private boolean processMove(String line) {
@@ -379,6 +408,10 @@ class Game {
     /** The official game board. */
     private Board _board;
 
+    /** Time allowed to an automated player for each move, in
+     *  milliseconds. */
+    private long _timeLimit = Math.round(DEFAULT_TIME_LIMIT * MILLISEC);
+
     /** The current templates for manual and automated players. */
     private Player _autoPlayerTemplate, _manualPlayerTemplate;
 
@@ -2,7 +2,10 @@
  * University of California.  All rights reserved. */
 package loa;
 
+import java.util.List;
+
 import static loa.Piece.*;
+import static loa.Utils.*;
 
 /** An automated Player.
  *  @author Ayela Chughtai
@@ -14,6 +17,16 @@ class MachinePlayer extends Player {
     private static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
     /** A magnitude greater than a normal value. */
     private static final int INFTY = Integer.MAX_VALUE;
+    /** Log base 2 of the number of entries in the transposition table. */
+    private static final int TABLE_BITS = 18;
+    /** Greatest depth searched.  Wins are scored WINNING_VALUE plus the
+     *  depth left when found, so this must stay below 20. */
+    private static final int MAX_DEPTH = 16;
+    /** One less than the number of positions searched between checks of
+     *  the clock. */
+    private static final int CHECK_MASK = (1 << 10) - 1;
+    /** Number of nanoseconds in one millisecond. */
+    private static final long NANOS_PER_MILLI = 1_000_000L;
 
     /** A new MachinePlayer with no piece or controller (intended to produce
      *  a template). */
@@ -24,15 +37,12 @@ class MachinePlayer extends Player {
     /** A MachinePlayer that plays the SIDE pieces in GAME. */
     MachinePlayer(Piece side, Game game) {
         super(side, game);
-        _prevRegionSizeWP = 0;
-        _prevRegionSizeBP = 0;
     }
 
     @Override
     String getMove() {
         Move choice;
         assert side() == getGame().getBoard().turn();
-        int depth;
         choice = searchForMove();
         getGame().reportMove(choice);
         return choice.toString();
@@ -48,19 +58,43 @@ class MachinePlayer extends Player {
         return false;
     }
 
-    /** Return a move after searching the game tree to DEPTH>0 moves
-     *  from the current position. Assumes the game is not over. */
+    /** Return a move after searching the game tree from the current
+     *  position to depths 1, 2, ... in turn, for as long as the game's
+     *  time limit allows, and return the move found by the deepest search
+     *  that finished.  A search that runs out of time is abandoned, but the
+     *  search to depth 1 is always finished.  Each search tries the move
+     *  found by the one before first.  Assumes the game is not over. */
     private Move searchForMove() {
         Board work = new Board(getBoard());
-        int value;
         assert side() == work.turn();
         _foundMove = null;
-        if (side() == WP) {
-            value = findMove(work, chooseDepth(), true, 1, -INFTY, INFTY);
-        } else {
-            value = findMove(work, chooseDepth(), true, -1, -INFTY, INFTY);
+        if (_table == null) {
+            _table = new TranspositionTable(TABLE_BITS);
+        }
+        _table.newSearch();
+        long start = System.nanoTime();
+        long budget = getGame().timeLimit() * NANOS_PER_MILLI;
+        int sense = side() == WP ? 1 : -1;
+        Move best = null;
+        _deadline = start + budget;
+        _outOfTime = false;
+        _timed = false;
+        for (int depth = 1; depth <= MAX_DEPTH; depth += 1) {
+            int value = findMove(work, depth, true, sense, -INFTY, INFTY);
+            if (_outOfTime) {
+                break;
+            }
+            best = _foundMove;
+            _timed = true;
+            debug(1, "%s: depth %d, %s, value %d, %d ms", side().fullName(),
+                  depth, best, value,
+                  (System.nanoTime() - start) / NANOS_PER_MILLI);
+            if (Math.abs(value) >= WINNING_VALUE
+                    || 2 * (System.nanoTime() - start) > budget) {
+                break;
+            }
         }
-        return _foundMove;
+        return best;
     }
 
     /** Find a move from position BOARD and return its value, recording
@@ -69,54 +103,108 @@ class MachinePlayer extends Player {
      *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
      *  DEPTH levels.  Searching at level 0 simply returns a static estimate
      *  of the board value and does not set _foundMove. If the game is over
-     *  on BOARD, does not set _foundMove. */
+     *  on BOARD, does not set _foundMove.  Positions already searched
+     *  deeply enough are looked up in _table instead, and the best move
+     *  it records for BOARD is tried first.  A win is worth more the
+     *  fewer moves it takes.  If time runs out, returns 0 at once and
+     *  sets _outOfTime. */
     private int findMove(Board board, int depth, boolean saveMove,
                          int sense, int alpha, int beta) {
-        if (depth == 0 || board.gameOver()) {
+        if (board.gameOver()) {
+            int value = heuristic(board);
+            if (value >= WINNING_VALUE) {
+                return value + depth;
+            } else if (value <= -WINNING_VALUE) {
+                return value - depth;
+            }
+            return value;
+        }
+        if (depth == 0) {
             return heuristic(board);
         }
-        int bestScore = 0;
-        if (sense == 1) {
-            bestScore = -10;
-            for (Move move: board.legalMoves()) {
-                board.makeMove(move);
-                int score = findMove(board, depth - 1,
-                        false, sense, alpha, beta);
-                board.retract();
-                alpha = Math.max(score, alpha);
-                if (score >= bestScore) {
-                    bestScore = score;
-                    if (saveMove) {
-                        _foundMove = move;
-                    }
-                }
-                if (alpha >= beta) {
-                    break;
-                }
+        if (outOfTime()) {
+            return 0;
+        }
+        long key = board.zobristKey();
+        int slot = _table.find(key);
+        Move hashMove = slot < 0 ? null : _table.move(slot);
+        if (saveMove && _foundMove != null) {
+            hashMove = _foundMove;
+        }
+        if (slot >= 0 && !saveMove && _table.depth(slot) >= depth) {
+            int value = _table.value(slot);
+            switch (_table.kind(slot)) {
+            case TranspositionTable.EXACT:
+                return value;
+            case TranspositionTable.LOWER:
+                alpha = Math.max(alpha, value);
+                break;
+            default:
+                beta = Math.min(beta, value);
+                break;
+            }
+            if (alpha >= beta) {
+                return value;
             }
-        } else if (sense == -1) {
-            bestScore = 10;
-            for (Move move: board.legalMoves()) {
-                board.makeMove(move);
-                int score = findMove(board, depth - 1,
-                        false, sense, alpha, beta);
-                board.retract();
+        }
+        int alpha0 = alpha, beta0 = beta;
+        List<Move> moves = board.legalMoves();
+        if (hashMove != null && moves.remove(hashMove)) {
+            moves.add(0, hashMove);
+        }
+        int bestScore = sense == 1 ? -INFTY : INFTY;
+        Move bestMove = null;
+        for (Move move: moves) {
+            board.makeMove(move);
+            int score = findMove(board, depth - 1,
+                    false, -sense, alpha, beta);
+            board.retract();
+            if (better(score, move, bestScore, bestMove, sense)) {
+                bestScore = score;
+                bestMove = move;
+            }
+            if (sense == 1) {
+                alpha = Math.max(score, alpha);
+            } else {
                 beta = Math.min(score, beta);
-                if (score <= bestScore) {
-                    bestScore = score;
-                    if (saveMove) {
-                        _foundMove = move;
-                    }
-                }
-                if (alpha >= beta) {
-                    break;
-                }
+            }
+            if (alpha >= beta || _outOfTime) {
+                break;
             }
         }
+        if (_outOfTime) {
+            return 0;
+        }
+        if (saveMove) {
+            _foundMove = bestMove;
+        }
+        int kind;
+        if (bestScore <= alpha0) {
+            kind = TranspositionTable.UPPER;
+        } else if (bestScore >= beta0) {
+            kind = TranspositionTable.LOWER;
+        } else {
+            kind = TranspositionTable.EXACT;
+        }
+        _table.store(key, depth, bestScore, kind, bestMove);
         return bestScore;
     }
 
-    /** Returns heuristic value.
+    /** Return true iff MOVE, of value SCORE, is better than BESTMOVE, of
+     *  value BESTSCORE, for the side maximizing values if SENSE==1 and
+     *  minimizing them if SENSE==-1.  Of moves of equal value, a capture
+     *  is better than a move that is not. */
+    private static boolean better(int score, Move move, int bestScore,
+                                  Move bestMove, int sense) {
+        if (bestMove == null || score * sense > bestScore * sense) {
+            return true;
+        }
+        return score == bestScore && move.isCapture()
+                && !bestMove.isCapture();
+    }
+
+    /** Returns heuristic value.  It depends only on BOARD, so that it
+     *  may be kept in the transposition table.
      * @param board is current board.
      * */
     private int heuristic(Board board) {
@@ -127,46 +215,45 @@ class MachinePlayer extends Player {
         } else if (board.winner() == BP) {
             return -WINNING_VALUE;
         }
-        int totalScore = (board.getRegionSizes(BP).size())
-                - (board.getRegionSizes(WP).size());
-        if (_prevRegionSizeWP != 0
-                && board.getRegionSizes(WP).size() < _prevRegionSizeWP) {
-            totalScore += 1;
-        } else if (board.getRegionSizes(WP).size() > _prevRegionSizeWP) {
-            totalScore -= 1;
-        }
-        if (_prevRegionSizeBP != 0
-                && board.getRegionSizes(BP).size() < _prevRegionSizeBP) {
-            totalScore -= 1;
-        } else if (board.getRegionSizes(BP).size() > _prevRegionSizeBP) {
-            totalScore += 1;
-        }
-        if (board.getRegionSizes(BP).size()
-                > board.getRegionSizes(WP).size()) {
+        int whiteRegions = board.getRegionSizes(WP).size();
+        int blackRegions = board.getRegionSizes(BP).size();
+        int totalScore = blackRegions - whiteRegions;
+        if (blackRegions > whiteRegions) {
             totalScore += 1;
         } else {
             totalScore -= 1;
         }
-        if (_foundMove != null && _foundMove.isCapture()) {
-            totalScore += 1;
-        }
-        _prevRegionSizeWP = board.getRegionSizes(WP).size();
-        _prevRegionSizeBP = board.getRegionSizes(BP).size();
         return totalScore;
     }
 
-    /** Return a search depth for the current position. */
-    private int chooseDepth() {
-        return 2;
+    /** Return true iff the current search must be abandoned because the
+     *  time for this move has run out.  The clock is read only once every
+     *  CHECK_MASK + 1 calls, and never during the search to depth 1. */
+    private boolean outOfTime() {
+        _nodes += 1;
+        if (_timed && (_nodes & CHECK_MASK) == 0
+                && System.nanoTime() - _deadline > 0) {
+            _outOfTime = true;
+        }
+        return _outOfTime;
     }
 
     /** Used to convey moves discovered by findMove. */
     private Move _foundMove;
 
-    /** Previous region size. */
-    private int _prevRegionSizeWP;
-    /** Previous region size. */
-    private int _prevRegionSizeBP;
+    /** Results of earlier searches, kept from move to move. */
+    private TranspositionTable _table;
+
+    /** Value of System.nanoTime() at which the current search is to be
+     *  abandoned. */
+    private long _deadline;
+    /** True iff the current search may be abandoned when time runs out. */
+    private boolean _timed;
+    /** True iff the current search has run out of time. */
+    private boolean _outOfTime;
+    /** Number of positions searched, used to space out reads of the
+     *  clock. */
+    private long _nodes;
 
 }
 
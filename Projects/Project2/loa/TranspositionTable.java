@@ -0,0 +1,102 @@
+package loa;
+
+/** A fixed-size table of the results of searches of positions, indexed by
+ *  Zobrist key, so that a position reached again by another order of
+ *  moves need not be searched again.  Each entry holds the value found,
+ *  whether it is exact or only a bound, the depth searched and the best
+ *  move.  When two positions fall in the same slot, the one searched
+ *  deeper is kept, unless the other is from an earlier search.
+ *  @author Ayela Chughtai
+ */
+class TranspositionTable {
+
+    /** Kind of value stored: the exact value of the position. */
+    static final int EXACT = 0;
+    /** Kind of value stored: a lower bound, found when the search failed
+     *  high. */
+    static final int LOWER = 1;
+    /** Kind of value stored: an upper bound, found when the search failed
+     *  low. */
+    static final int UPPER = 2;
+
+    /** A table of 2**BITS entries. */
+    TranspositionTable(int bits) {
+        int size = 1 << bits;
+        _mask = size - 1;
+        _keys = new long[size];
+        _values = new int[size];
+        _depths = new byte[size];
+        _kinds = new byte[size];
+        _ages = new byte[size];
+        _moves = new Move[size];
+    }
+
+    /** Start a new search, after which the entries of earlier searches
+     *  may be replaced by shallower ones. */
+    void newSearch() {
+        _age += 1;
+    }
+
+    /** Return the slot holding the position whose Zobrist key is KEY, or
+     *  -1 if it is not in the table. */
+    int find(long key) {
+        int slot = (int) key & _mask;
+        if (_keys[slot] != key || _depths[slot] == 0) {
+            return -1;
+        }
+        return slot;
+    }
+
+    /** Return the value stored in SLOT. */
+    int value(int slot) {
+        return _values[slot];
+    }
+
+    /** Return the depth to which the position in SLOT was searched. */
+    int depth(int slot) {
+        return _depths[slot];
+    }
+
+    /** Return the kind of value (EXACT, LOWER or UPPER) stored in SLOT. */
+    int kind(int slot) {
+        return _kinds[slot];
+    }
+
+    /** Return the best move found from the position in SLOT, or null. */
+    Move move(int slot) {
+        return _moves[slot];
+    }
+
+    /** Record that the position with Zobrist key KEY, searched to DEPTH>0,
+     *  has value VALUE of kind KIND, and that MOVE is its best move. */
+    void store(long key, int depth, int value, int kind, Move move) {
+        int slot = (int) key & _mask;
+        if (_ages[slot] == _age && _depths[slot] > depth) {
+            return;
+        }
+        _keys[slot] = key;
+        _depths[slot] = (byte) depth;
+        _values[slot] = value;
+        _kinds[slot] = (byte) kind;
+        _ages[slot] = _age;
+        _moves[slot] = move;
+    }
+
+    /** Mask giving the slot of a key. */
+    private final int _mask;
+    /** Zobrist keys of the positions stored, by slot. */
+    private final long[] _keys;
+    /** Values of the positions stored, by slot. */
+    private final int[] _values;
+    /** Depths searched, by slot. */
+    private final byte[] _depths;
+    /** Kinds of the values stored, by slot. */
+    private final byte[] _kinds;
+    /** The searches that stored each slot. */
+    private final byte[] _ages;
+    /** Best moves, by slot. */
+    private final Move[] _moves;
+    /** The current search. */
+    private byte _age;
+
+}
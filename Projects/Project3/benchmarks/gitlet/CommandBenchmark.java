@@ -0,0 +1,286 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks of the latency of Gitlet commands against the size of
+ *  the repository, run with "make bench" in the gitlet directory.
+ *
+ *  Each trial generates a synthetic repository of COMMITS commits on
+ *  master over FILES files, plus BRANCHES branches that each change one
+ *  more file, and then times one command on it, run in-process through
+ *  Main.main. Gitlet works in the current directory, so the benchmarks
+ *  run in a scratch directory marked by a MARKER subdirectory, whose
+ *  contents each trial deletes; they refuse to run anywhere else.
+ *
+ *  Commands run in the same JVM one after another, so they share its
+ *  warmed-up code and static caches, such as that of tree nodes; the
+ *  results measure the work a command does rather than JVM startup.
+ *  @author Ayela Chughtai
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandBenchmark {
+
+    /** Name of the directory marking a scratch directory in which the
+     * benchmarks may delete everything. */
+    static final String MARKER = ".gitlet-bench";
+
+    /** Number of lines in each generated file. */
+    static final int LINES = 20;
+
+    /** A generated repository, on master, with nothing staged. */
+    @State(Scope.Benchmark)
+    public static class Repo {
+
+        /** Number of commits on master. */
+        @Param({"100", "1000"})
+        public int commits;
+
+        /** Number of files in each commit. */
+        @Param({"100", "10000"})
+        public int files;
+
+        /** Number of branches besides master. */
+        @Param({"1", "8"})
+        public int branches;
+
+        /** Generates the repository in the current directory, deleting
+         * whatever was there, and silences the output of commands. */
+        @Setup(Level.Trial)
+        public void generate() {
+            File dir = new File(System.getProperty("user.dir"));
+            if (!new File(dir, MARKER).isDirectory()) {
+                throw new IllegalStateException(dir + " has no " + MARKER
+                        + " directory; run the benchmarks in a scratch "
+                        + "directory");
+            }
+            clear(dir);
+            _out = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Main.main("init");
+            ArrayList<String> names = new ArrayList<>();
+            for (int i = 0; i < files; i += 1) {
+                names.add(fileName(i));
+                edit(i, 0);
+            }
+            Main.main(add(names));
+            Main.main("commit", "files");
+            for (int c = 1; c < commits - 1; c += 1) {
+                edit(c % files, c);
+                Main.main("add", fileName(c % files));
+                Main.main("commit", "commit " + c);
+            }
+            for (int b = 0; b < branches; b += 1) {
+                int file = files - 1 - b % files;
+                Main.main("branch", "b" + b);
+                Main.main("checkout", "b" + b);
+                edit(file, commits + b);
+                Main.main("add", fileName(file));
+                Main.main("commit", "branch " + b);
+                Main.main("checkout", "master");
+            }
+            edit(0, commits);
+            Main.main("add", fileName(0));
+            Main.main("commit", "commit " + commits);
+            Main.readFiles();
+            _head = Main.getCommitTree().getLastCommitId();
+        }
+
+        /** Restores the output of commands. */
+        @TearDown(Level.Trial)
+        public void restore() {
+            System.setOut(_out);
+        }
+
+        /** Returns the ID of the latest commit on master once the
+         * repository was generated. */
+        String getHead() {
+            return _head;
+        }
+
+        /** Returns the next edit number, for making new contents. */
+        int nextEdit() {
+            _edits += 1;
+            return commits + branches + _edits;
+        }
+
+        /** Output of commands before the trial. */
+        private PrintStream _out;
+
+        /** ID of the latest commit on master. */
+        private String _head;
+
+        /** Number of edits made by the benchmarks. */
+        private int _edits;
+
+    }
+
+    /** A working file changed, but not staged, before each invocation. */
+    @State(Scope.Benchmark)
+    public static class Changed {
+
+        /** Changes a file of REPO.
+         * @param repo the repository. */
+        @Setup(Level.Invocation)
+        public void change(Repo repo) {
+            edit(1 % repo.files, repo.nextEdit());
+        }
+
+    }
+
+    /** A working file changed and staged before each invocation. */
+    @State(Scope.Benchmark)
+    public static class Staged {
+
+        /** Changes and stages a file of REPO.
+         * @param repo the repository. */
+        @Setup(Level.Invocation)
+        public void stage(Repo repo) {
+            edit(1 % repo.files, repo.nextEdit());
+            Main.main("add", fileName(1 % repo.files));
+            _message = "edit " + repo._edits;
+        }
+
+        /** Message for the commit of the staged file. */
+        private String _message;
+
+    }
+
+    /** Master reset to its generated head before each invocation, so
+     * that merging b0 into it is never a fast-forward. */
+    @State(Scope.Benchmark)
+    public static class Unmerged {
+
+        /** Resets master of REPO.
+         * @param repo the repository. */
+        @Setup(Level.Invocation)
+        public void reset(Repo repo) {
+            Main.main("reset", repo.getHead());
+        }
+
+    }
+
+    /** Times opening the repository: replaying the journal over the
+     * checkpointed commit tree and staging area.
+     * @param repo the repository. */
+    @Benchmark
+    public CommitTree open(Repo repo) {
+        Main.readFiles();
+        return Main.getCommitTree();
+    }
+
+    /** Times adding a changed file.
+     * @param repo the repository.
+     * @param changed the changed file. */
+    @Benchmark
+    public void add(Repo repo, Changed changed) {
+        Main.main("add", fileName(1 % repo.files));
+    }
+
+    /** Times committing a staged file.
+     * @param repo the repository.
+     * @param staged the staged file. */
+    @Benchmark
+    public void commit(Repo repo, Staged staged) {
+        Main.main("commit", staged._message);
+    }
+
+    /** Times status on a clean working directory.
+     * @param repo the repository. */
+    @Benchmark
+    public void status(Repo repo) {
+        Main.main("status");
+    }
+
+    /** Times log of master.
+     * @param repo the repository. */
+    @Benchmark
+    public void log(Repo repo) {
+        Main.main("log");
+    }
+
+    /** Times checking out b0 and then master again.
+     * @param repo the repository. */
+    @Benchmark
+    public void checkout(Repo repo) {
+        Main.main("checkout", "b0");
+        Main.main("checkout", "master");
+    }
+
+    /** Times merging b0 into master.
+     * @param repo the repository.
+     * @param unmerged master before the merge. */
+    @Benchmark
+    public void merge(Repo repo, Unmerged unmerged) {
+        Main.main("merge", "b0");
+    }
+
+    /** Returns the name of generated file I.
+     * @param i file number. */
+    static String fileName(int i) {
+        return "file" + i + ".txt";
+    }
+
+    /** Writes version VERSION of generated file I.
+     * @param i file number.
+     * @param version version number. */
+    static void edit(int i, int version) {
+        StringBuilder contents = new StringBuilder();
+        for (int line = 0; line < LINES; line += 1) {
+            contents.append("file ").append(i).append(" line ").append(line)
+                .append(line == i % LINES ? " version " + version : "")
+                .append('\n');
+        }
+        Utils.writeContents(new File(fileName(i)), contents.toString());
+    }
+
+    /** Returns the arguments for adding NAMES.
+     * @param names names of files. */
+    static String[] add(List<String> names) {
+        ArrayList<String> args = new ArrayList<>();
+        args.add("add");
+        args.addAll(names);
+        return args.toArray(new String[0]);
+    }
+
+    /** Deletes everything in DIR but the MARKER directory.
+     * @param dir the scratch directory. */
+    static void clear(File dir) {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                .filter(path -> !path.equals(dir.toPath())
+                        && !path.startsWith(dir.toPath().resolve(MARKER)))
+                .forEach(path -> path.toFile().delete());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+}
@@ -1,22 +1,155 @@
 package gitlet;
 
 import java.io.File;
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
-/** Blob class for Gitlet, implements serializable interface.
+/** Blob class for Gitlet. A blob is one version of the contents of a
+ *  file; it is identified by the SHA-1 hash of those contents and kept
+ *  in the object store under that ID. Files are read in fixed-size
+ *  chunks, so hashing and storing a blob takes bounded memory however
+ *  large the file is.
  *  @author Ayela Chughtai
  */
-public class Blob implements Serializable {
+public class Blob {
 
-    /** Constructor of the blob class.
+    /** Number of bytes of a file read at a time. */
+    static final int CHUNK_SIZE = 1 << 16;
+
+    /** Constructor of the blob class. Hashes the file without storing
+     * it.
      * @param fileName is name of the file.
      * */
     public Blob(String fileName) {
+        this(fileName, false);
+    }
+
+    /** Constructor of the blob class.
+     * @param fileName is name of the file.
+     * @param store if true, also writes the compressed contents of the
+     *              file to the object store, in the same pass over the
+     *              file as the hash: as chunks, of which only those not
+     *              already stored are written, if the file has at least
+     *              ChunkList.THRESHOLD bytes.
+     * */
+    public Blob(String fileName, boolean store) {
         _fileName = fileName;
         _file = new File(_fileName);
-        _contents = Utils.readContents(_file);
-        _contentsString = Utils.readContentsAsString(_file);
-        _blobId = Utils.sha1('b' + _fileName + _contentsString);
+        try (Trace.Span span = Trace.span("blob")) {
+            if (!store) {
+                _blobId = hash(_file, null);
+            } else if (_file.isFile()
+                       && _file.length() >= ChunkList.THRESHOLD) {
+                try (InputStream in = Files.newInputStream(_file.toPath())) {
+                    _blobId = ChunkList.write(in, Main.getObjectStore());
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            } else {
+                ObjectStore objects = Main.getObjectStore();
+                File temp = objects.tempFile();
+                try (OutputStream out = objects.compress(temp)) {
+                    _blobId = hash(_file, out);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+                objects.install(temp, _blobId);
+            }
+        }
+    }
+
+    /** Returns the blob ID of the contents of FILE, copying those
+     * contents to OUT as they are read unless OUT is null.
+     * @param file file to be hashed.
+     * @param out stream receiving the contents, or null. */
+    private static String hash(File file, OutputStream out) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update((byte) 'b');
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            while (channel.read(buffer) >= 0) {
+                Trace.add(Trace.BYTES_READ, buffer.position());
+                Trace.add(Trace.BYTES_HASHED, buffer.position());
+                md.update(buffer.array(), 0, buffer.position());
+                if (out != null) {
+                    out.write(buffer.array(), 0, buffer.position());
+                }
+                buffer.clear();
+            }
+            return Utils.toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+        }
+    }
+
+    /** Returns the contents of the blob with the given ID, read from
+     * the object store.
+     * @param blobId ID of the blob. */
+    public static byte[] readContents(String blobId) {
+        return Main.getObjectStore().read(blobId);
+    }
+
+    /** Writes the contents of the blob with the given ID to the working
+     * file FILENAME, and records them in the stat cache. A file that
+     * already has those contents is left alone. Otherwise the contents
+     * are streamed from the object store into a temporary file, which is
+     * then renamed over FILENAME, so the file is never left missing or
+     * half-written.
+     * @param blobId ID of the blob.
+     * @param fileName name of the file. */
+    public static void writeFile(String blobId, String fileName) {
+        File file = Utils.join(System.getProperty("user.dir"), fileName);
+        StatCache cache = Main.getStatCache();
+        if (file.isFile() && blobId.equals(cache.blobId(fileName))) {
+            return;
+        }
+        File temp = Utils.join(file.getParentFile(), ".gitlet-checkout");
+        try (ReadableByteChannel in = Channels.newChannel(
+                 Main.getObjectStore().open(blobId));
+             FileChannel out = FileChannel.open(temp.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            long count;
+            while ((count = out.transferFrom(in, position, CHUNK_SIZE)) > 0) {
+                position += count;
+            }
+            Trace.add(Trace.BYTES_WRITTEN, position);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        cache.record(fileName, blobId);
+    }
+
+    /** Returns the contents of the blob with the given ID as a string.
+     * @param blobId ID of the blob. */
+    public static String readContentsAsString(String blobId) {
+        return new String(readContents(blobId), StandardCharsets.UTF_8);
     }
 
     /** Returns the name of the file. */
@@ -29,33 +162,17 @@ public class Blob implements Serializable {
         return _file;
     }
 
-    /** Returns the contents of the file. */
-    public byte[] getFileContents() {
-        return _contents;
-    }
-
-    /** Returns the contents of the file as a string. */
-    public String getFileContentsString() {
-        return _contentsString;
-    }
-
     /** Returns the ID of the blob. */
     public String getBlobId() {
         return _blobId;
     }
 
-    /** Byte[] contents of a file.*/
-    private byte[] _contents;
-
     /** String name of a file.*/
     private String _fileName;
 
     /** String ID of a blob.*/
     private String _blobId;
 
-    /** String contents of a file.*/
-    private String _contentsString;
-
     /** A file.*/
     private File _file;
 
@@ -0,0 +1,264 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+
+/** The list of chunks of a large blob, stored in its place.
+ *
+ *  A blob of at least THRESHOLD bytes is cut into chunks at points chosen
+ *  by its contents, as in FastCDC: a gear rolling hash is taken over the
+ *  bytes after the first MIN_CHUNK of a chunk, and the chunk ends where
+ *  the top bits of the hash are zero, or at MAX_CHUNK bytes. Up to
+ *  AVERAGE_CHUNK the hash must match MASK_SMALL, which has more bits than
+ *  MASK_LARGE, used beyond it, so that chunk lengths cluster around
+ *  AVERAGE_CHUNK. Each chunk is stored as an object of its own under the
+ *  SHA-1 hash of "k" and its bytes, and the blob is stored as the list
+ *  of its chunks. An edit or an append changes only the chunks around
+ *  it, so a new version of a large file writes only those chunks and a
+ *  list, and its unchanged chunks are shared with the versions before.
+ *
+ *  The ID of a blob is the hash of its whole contents however it is
+ *  stored, so nothing outside the object store depends on whether it was
+ *  chunked. A chunk list holds the ID of its blob, which the contents of
+ *  a blob stored whole cannot, since they cannot contain their own hash:
+ *  an object is a chunk list if it decodes as one naming its own ID.
+ *  @author Ayela Chughtai
+ */
+class ChunkList {
+
+    /** Least size of a blob stored as chunks. */
+    static final int THRESHOLD = 1 << 20;
+
+    /** Least length of a chunk, but for the last of a blob. */
+    static final int MIN_CHUNK = 1 << 14;
+
+    /** Length around which the lengths of chunks cluster. */
+    static final int AVERAGE_CHUNK = 1 << 16;
+
+    /** Greatest length of a chunk. */
+    static final int MAX_CHUNK = 1 << 18;
+
+    /** Number of bytes at the start of every chunk list: MAGIC and the
+     * tag of Codec. */
+    static final int HEADER_BYTES = Integer.BYTES + 1;
+
+    /** Random values of the bytes for the gear rolling hash, shared with
+     * Renames. */
+    static final long[] GEAR = gear();
+
+    /** Bits of the rolling hash that are zero at the end of a chunk
+     * shorter than AVERAGE_CHUNK: the top 18, two more than an average
+     * chunk takes. */
+    private static final long MASK_SMALL = -1L << (Long.SIZE - 18);
+
+    /** Bits of the rolling hash that are zero at the end of a chunk
+     * longer than AVERAGE_CHUNK: the top 14, two fewer than an average
+     * chunk takes. */
+    private static final long MASK_LARGE = -1L << (Long.SIZE - 14);
+
+    /** A list of the chunks with IDs CHUNKIDS and lengths SIZES of the
+     * blob BLOBID.
+     * @param blobId ID of the blob.
+     * @param chunkIds IDs of its chunks, in order.
+     * @param sizes lengths of its chunks. */
+    private ChunkList(String blobId, List<String> chunkIds,
+                      List<Long> sizes) {
+        _blobId = blobId;
+        _chunkIds = chunkIds;
+        _sizes = sizes;
+    }
+
+    /** Stores the contents of IN in STORE as chunks and a chunk list, and
+     * returns the ID of the blob. Chunks already in STORE are not written
+     * again.
+     * @param in contents of the blob, at least THRESHOLD bytes long.
+     * @param store object store. */
+    static String write(InputStream in, ObjectStore store) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update((byte) 'b');
+            ArrayList<String> chunkIds = new ArrayList<>();
+            ArrayList<Long> sizes = new ArrayList<>();
+            byte[] buffer = new byte[2 * MAX_CHUNK];
+            int start = 0;
+            int end = 0;
+            boolean done = false;
+            while (true) {
+                if (!done && end - start < MAX_CHUNK) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                    int count = in.readNBytes(buffer, end,
+                            buffer.length - end);
+                    Trace.add(Trace.BYTES_READ, count);
+                    done = end + count < buffer.length;
+                    end += count;
+                }
+                if (start == end) {
+                    break;
+                }
+                int length = cut(buffer, start, end - start);
+                md.update(buffer, start, length);
+                Trace.add(Trace.BYTES_HASHED, length);
+                byte[] chunk = new byte[length];
+                System.arraycopy(buffer, start, chunk, 0, length);
+                String chunkId = Utils.sha1("k", chunk);
+                store.write(chunkId, chunk);
+                chunkIds.add(chunkId);
+                sizes.add((long) length);
+                start += length;
+            }
+            String blobId = Utils.toHex(md.digest());
+            store.writeObject(blobId, new ChunkList(blobId, chunkIds, sizes));
+            return blobId;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+        }
+    }
+
+    /** Returns the length of the chunk starting at START in BYTES, of
+     * which LENGTH bytes are available: all of them if the blob ends
+     * there, and otherwise at least MAX_CHUNK.
+     * @param bytes buffer holding the blob.
+     * @param start start of the chunk.
+     * @param length number of bytes after START. */
+    static int cut(byte[] bytes, int start, int length) {
+        if (length <= MIN_CHUNK) {
+            return length;
+        }
+        int average = Math.min(length, AVERAGE_CHUNK);
+        int end = Math.min(length, MAX_CHUNK);
+        long hash = 0;
+        int i = MIN_CHUNK;
+        for (; i < average; i += 1) {
+            hash = (hash << 1) + GEAR[bytes[start + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i += 1) {
+            hash = (hash << 1) + GEAR[bytes[start + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /** Returns true if HEADER, the first HEADER_BYTES bytes of an
+     * object, are those of a chunk list.
+     * @param header start of an object. */
+    static boolean isHeader(byte[] header) {
+        if (header.length != HEADER_BYTES) {
+            return false;
+        }
+        int magic = 0;
+        for (int i = 0; i < Integer.BYTES; i += 1) {
+            magic = (magic << Byte.SIZE) | (header[i] & 0xff);
+        }
+        return magic == Codec.MAGIC && header[Integer.BYTES]
+                == Codec.CHUNK_LIST;
+    }
+
+    /** Returns the chunk list stored as STORED under the ID ID, or null
+     * if STORED are the contents of a blob stored whole.
+     * @param id SHA-1 ID of the object.
+     * @param stored the object as stored. */
+    static ChunkList parse(String id, byte[] stored) {
+        try {
+            ChunkList list = Codec.decode(stored, ChunkList.class);
+            return id.equals(list._blobId) ? list : null;
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Returns a stream of the contents of the blob, reading each chunk
+     * from STORE only when the stream reaches it.
+     * @param store object store. */
+    InputStream open(ObjectStore store) {
+        Iterator<String> chunks = _chunkIds.iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return chunks.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return store.openStored(chunks.next());
+            }
+        });
+    }
+
+    /** Returns the ID of the blob. */
+    String getBlobId() {
+        return _blobId;
+    }
+
+    /** Returns the IDs of the chunks of the blob, in order. */
+    List<String> getChunkIds() {
+        return Collections.unmodifiableList(_chunkIds);
+    }
+
+    /** Returns the chunk list encoded in IN in version VERSION of the
+     * format of Codec.
+     * @param in source.
+     * @param version version of the format. */
+    static ChunkList decode(Codec.Input in, int version) {
+        String blobId = in.readId();
+        ArrayList<String> chunkIds = new ArrayList<>();
+        ArrayList<Long> sizes = new ArrayList<>();
+        for (long n = in.readNumber(); n > 0; n -= 1) {
+            chunkIds.add(in.readId());
+            sizes.add(in.readNumber());
+        }
+        return new ChunkList(blobId, chunkIds, sizes);
+    }
+
+    /** Writes the fields of this chunk list to OUT, for Codec.
+     * @param out destination. */
+    void encode(Codec.Output out) {
+        out.writeId(_blobId);
+        out.writeNumber(_chunkIds.size());
+        for (int i = 0; i < _chunkIds.size(); i += 1) {
+            out.writeId(_chunkIds.get(i));
+            out.writeNumber(_sizes.get(i));
+        }
+    }
+
+    /** Returns random values for the bytes, the same in every run. */
+    private static long[] gear() {
+        long[] gear = new long[256];
+        long state = 0x9e3779b97f4a7c15L;
+        for (int b = 0; b < gear.length; b += 1) {
+            state += 0x9e3779b97f4a7c15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            gear[b] = z ^ (z >>> 31);
+        }
+        return gear;
+    }
+
+    /** ID of the blob. */
+    private final String _blobId;
+
+    /** IDs of the chunks of the blob, in order. */
+    private final List<String> _chunkIds;
+
+    /** Lengths of the chunks of the blob. */
+    private final List<Long> _sizes;
+
+}
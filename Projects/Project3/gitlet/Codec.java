@@ -0,0 +1,501 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamConstants;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Compact binary encoding of the metadata of Gitlet: commits, tree
+ *  nodes, the commit tree, the staging area, the stat cache and the
+ *  chunk lists of large blobs.
+ *
+ *  An encoded object is a header, holding MAGIC, a tag naming its class
+ *  and the version of the format it was written in, followed by its
+ *  fields in a fixed order. Numbers are written as variable-length
+ *  integers, strings as their length and UTF-8 bytes, and object IDs as
+ *  their 20 raw bytes. Each class encodes its fields to an Output and
+ *  decodes them from an Input; its decoder is passed the version, so that
+ *  data written in any earlier version of the format can still be read
+ *  after fields are added. Objects written by Java serialization, as all
+ *  were before this format, are recognized by their stream header and
+ *  still read.
+ *  @author Ayela Chughtai
+ */
+class Codec {
+
+    /** First four bytes of every encoded object: "GLTB". */
+    static final int MAGIC = 0x474c5442;
+
+    /** Version of the format written. */
+    static final int VERSION = 1;
+
+    /** Tag of a commit. */
+    static final int COMMIT = 'C';
+
+    /** Tag of a tree node. */
+    static final int TREE = 'T';
+
+    /** Tag of a commit tree. */
+    static final int COMMIT_TREE = 'R';
+
+    /** Tag of a staging area. */
+    static final int STAGING_AREA = 'S';
+
+    /** Tag of a stat cache. */
+    static final int STAT_CACHE = 'I';
+
+    /** Tag of the chunk list of a large blob. */
+    static final int CHUNK_LIST = 'K';
+
+    /** Length of an object ID in bytes. */
+    static final int ID_BYTES = 20;
+
+    /** Largest number of bytes in a number written by writeNumber. */
+    private static final int MAX_NUMBER_BYTES = 10;
+
+    /** Initial size of the buffer into which an object is encoded. */
+    private static final int BUFFER_BYTES = 256;
+
+    /** Marks a null ID. */
+    private static final int NO_ID = 0;
+
+    /** Marks an ID written as its raw bytes. */
+    private static final int RAW_ID = 1;
+
+    /** Marks an ID that is not a SHA-1 hash, written as a string. */
+    private static final int STRING_ID = 2;
+
+    /** Digits of hexadecimal numbers. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Value of each ASCII character as a lowercase hexadecimal digit, or
+     * -1 if it is not one. */
+    private static final byte[] HEX_VALUES = hexValues();
+
+    /** Returns the encoding of OBJ, which must be of one of the encoded
+     * classes.
+     * @param obj object to be encoded. */
+    static byte[] encode(Object obj) {
+        Output out = new Output();
+        out.writeInt(MAGIC);
+        if (obj instanceof Commit) {
+            out.writeByte(COMMIT);
+            out.writeByte(VERSION);
+            ((Commit) obj).encode(out);
+        } else if (obj instanceof Tree) {
+            out.writeByte(TREE);
+            out.writeByte(VERSION);
+            ((Tree) obj).encode(out);
+        } else if (obj instanceof CommitTree) {
+            out.writeByte(COMMIT_TREE);
+            out.writeByte(VERSION);
+            ((CommitTree) obj).encode(out);
+        } else if (obj instanceof StagingArea) {
+            out.writeByte(STAGING_AREA);
+            out.writeByte(VERSION);
+            ((StagingArea) obj).encode(out);
+        } else if (obj instanceof StatCache) {
+            out.writeByte(STAT_CACHE);
+            out.writeByte(VERSION);
+            ((StatCache) obj).encode(out);
+        } else if (obj instanceof ChunkList) {
+            out.writeByte(CHUNK_LIST);
+            out.writeByte(VERSION);
+            ((ChunkList) obj).encode(out);
+        } else {
+            throw new IllegalArgumentException("cannot encode "
+                    + obj.getClass().getName());
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the object encoded in BYTES, cast to EXPECTEDCLASS.
+     * @param bytes an encoded object, or a serialized one.
+     * @param expectedClass class of the object.
+     * @param <T> type of the object. */
+    static <T> T decode(byte[] bytes, Class<T> expectedClass) {
+        if (isSerialized(bytes)) {
+            return deserialize(bytes, expectedClass);
+        }
+        Input in = new Input(bytes);
+        if (in.readInt() != MAGIC) {
+            throw new IllegalArgumentException("not a Gitlet object");
+        }
+        int tag = in.readByte();
+        int version = in.readByte();
+        if (version > VERSION) {
+            throw new IllegalArgumentException("object written by a newer "
+                    + "version of Gitlet");
+        }
+        Object obj;
+        switch (tag) {
+        case COMMIT:
+            obj = Commit.decode(in, version);
+            break;
+        case TREE:
+            obj = Tree.decode(in, version);
+            break;
+        case COMMIT_TREE:
+            obj = CommitTree.decode(in, version);
+            break;
+        case STAGING_AREA:
+            obj = StagingArea.decode(in, version);
+            break;
+        case STAT_CACHE:
+            obj = StatCache.decode(in, version);
+            break;
+        case CHUNK_LIST:
+            obj = ChunkList.decode(in, version);
+            break;
+        default:
+            throw new IllegalArgumentException("unknown object tag " + tag);
+        }
+        try {
+            return expectedClass.cast(obj);
+        } catch (ClassCastException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the object encoded in FILE, cast to EXPECTEDCLASS.
+     * @param file file holding an encoded or serialized object.
+     * @param expectedClass class of the object.
+     * @param <T> type of the object. */
+    static <T> T read(File file, Class<T> expectedClass) {
+        return decode(Utils.readContents(file), expectedClass);
+    }
+
+    /** Writes the encoding of OBJ to FILE.
+     * @param file destination.
+     * @param obj object to be encoded. */
+    static void write(File file, Object obj) {
+        Utils.writeContents(file, encode(obj));
+    }
+
+    /** Returns true if BYTES begin with the header of a Java
+     * serialization stream.
+     * @param bytes contents of an object. */
+    private static boolean isSerialized(byte[] bytes) {
+        return bytes.length >= 2
+                && (short) (((bytes[0] & 0xff) << 8) | (bytes[1] & 0xff))
+                == ObjectStreamConstants.STREAM_MAGIC;
+    }
+
+    /** Returns the object serialized in BYTES by Java serialization, cast
+     * to EXPECTEDCLASS.
+     * @param bytes a serialized object.
+     * @param expectedClass class of the object.
+     * @param <T> type of the object. */
+    private static <T> T deserialize(byte[] bytes, Class<T> expectedClass) {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the value of the lowercase hexadecimal digit C, or -1 if C
+     * is not one. A table lookup, since the digits of a hash are random
+     * and comparisons would be mispredicted half the time.
+     * @param c a character. */
+    private static int hexValue(char c) {
+        return c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+    }
+
+    /** Returns the table of the values of hexadecimal digits. */
+    private static byte[] hexValues() {
+        byte[] values = new byte[128];
+        Arrays.fill(values, (byte) -1);
+        for (int d = 0; d < HEX_DIGITS.length; d += 1) {
+            values[HEX_DIGITS[d]] = (byte) d;
+        }
+        return values;
+    }
+
+    /** Returns true if ID is a SHA-1 hash in lowercase hexadecimal.
+     * @param id an object ID. */
+    private static boolean isHash(String id) {
+        if (id.length() != 2 * ID_BYTES) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i += 1) {
+            if (hexValue(id.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** A growing buffer into which an object is encoded. Unlike a
+     * DataOutputStream, it takes no lock for each write. */
+    static class Output {
+
+        /** Writes the low byte of B.
+         * @param b a byte. */
+        void writeByte(int b) {
+            ensure(1);
+            _bytes[_length] = (byte) b;
+            _length += 1;
+        }
+
+        /** Writes B as one byte.
+         * @param b a boolean. */
+        void writeBoolean(boolean b) {
+            writeByte(b ? 1 : 0);
+        }
+
+        /** Writes the four bytes of N, high byte first.
+         * @param n a number. */
+        void writeInt(int n) {
+            ensure(Integer.BYTES);
+            for (int shift = Integer.SIZE - Byte.SIZE; shift >= 0;
+                 shift -= Byte.SIZE) {
+                _bytes[_length] = (byte) (n >>> shift);
+                _length += 1;
+            }
+        }
+
+        /** Writes the eight bytes of N, high byte first.
+         * @param n a number. */
+        void writeLong(long n) {
+            ensure(Long.BYTES);
+            for (int shift = Long.SIZE - Byte.SIZE; shift >= 0;
+                 shift -= Byte.SIZE) {
+                _bytes[_length] = (byte) (n >>> shift);
+                _length += 1;
+            }
+        }
+
+        /** Writes the number N in as few bytes as it needs, seven bits to
+         * a byte, low bits first. N should not be negative, or it takes
+         * ten bytes.
+         * @param n a number. */
+        void writeNumber(long n) {
+            ensure(MAX_NUMBER_BYTES);
+            while ((n & ~0x7fL) != 0) {
+                _bytes[_length] = (byte) (n | 0x80);
+                _length += 1;
+                n >>>= 7;
+            }
+            _bytes[_length] = (byte) n;
+            _length += 1;
+        }
+
+        /** Writes the string S, which may be null.
+         * @param s a string, or null. */
+        void writeString(String s) {
+            if (s == null) {
+                writeNumber(0);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeNumber(bytes.length + 1);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, _bytes, _length, bytes.length);
+            _length += bytes.length;
+        }
+
+        /** Writes the object ID ID, which may be null: as its raw bytes
+         * if it is a SHA-1 hash in hexadecimal, and otherwise as a
+         * string.
+         * @param id an object ID, or null. */
+        void writeId(String id) {
+            if (id == null) {
+                writeByte(NO_ID);
+            } else if (isHash(id)) {
+                ensure(1 + ID_BYTES);
+                _bytes[_length] = RAW_ID;
+                for (int i = 0; i < ID_BYTES; i += 1) {
+                    _bytes[_length + 1 + i] = (byte)
+                            (hexValue(id.charAt(2 * i)) << 4
+                             | hexValue(id.charAt(2 * i + 1)));
+                }
+                _length += 1 + ID_BYTES;
+            } else {
+                writeByte(STRING_ID);
+                writeString(id);
+            }
+        }
+
+        /** Writes MAP, from strings to object IDs, in the order of its
+         * entries, so that a sorted map is always written alike.
+         * @param map map from strings to object IDs. */
+        void writeIdMap(Map<String, String> map) {
+            writeNumber(map.size());
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                writeString(entry.getKey());
+                writeId(entry.getValue());
+            }
+        }
+
+        /** Writes MAP, from strings to strings.
+         * @param map map from strings to strings. */
+        void writeStringMap(Map<String, String> map) {
+            writeNumber(map.size());
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                writeString(entry.getKey());
+                writeString(entry.getValue());
+            }
+        }
+
+        /** Returns the bytes written. */
+        byte[] toByteArray() {
+            return Arrays.copyOf(_bytes, _length);
+        }
+
+        /** Makes room for N more bytes.
+         * @param n number of bytes. */
+        private void ensure(int n) {
+            if (_length + n > _bytes.length) {
+                _bytes = Arrays.copyOf(_bytes,
+                        Math.max(2 * _bytes.length, _length + n));
+            }
+        }
+
+        /** The buffer. */
+        private byte[] _bytes = new byte[BUFFER_BYTES];
+
+        /** Number of bytes written. */
+        private int _length;
+
+    }
+
+    /** An encoded object being decoded. Reading past its end throws
+     * IllegalArgumentException. */
+    static class Input {
+
+        /** An input reading BYTES from the start.
+         * @param bytes an encoded object. */
+        Input(byte[] bytes) {
+            _bytes = bytes;
+        }
+
+        /** Returns the next byte, from 0 to 255. */
+        int readByte() {
+            need(1);
+            int b = _bytes[_position] & 0xff;
+            _position += 1;
+            return b;
+        }
+
+        /** Returns the next byte as a boolean. */
+        boolean readBoolean() {
+            return readByte() != 0;
+        }
+
+        /** Returns a number written by Output.writeInt. */
+        int readInt() {
+            need(Integer.BYTES);
+            int n = 0;
+            for (int i = 0; i < Integer.BYTES; i += 1) {
+                n = (n << Byte.SIZE) | (_bytes[_position + i] & 0xff);
+            }
+            _position += Integer.BYTES;
+            return n;
+        }
+
+        /** Returns a number written by Output.writeLong. */
+        long readLong() {
+            need(Long.BYTES);
+            long n = 0;
+            for (int i = 0; i < Long.BYTES; i += 1) {
+                n = (n << Byte.SIZE) | (_bytes[_position + i] & 0xff);
+            }
+            _position += Long.BYTES;
+            return n;
+        }
+
+        /** Returns a number written by Output.writeNumber. */
+        long readNumber() {
+            long n = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+                int b = readByte();
+                n |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return n;
+                }
+            }
+            throw new IllegalArgumentException("malformed number");
+        }
+
+        /** Returns a string written by Output.writeString. */
+        String readString() {
+            long length = readNumber();
+            if (length == 0) {
+                return null;
+            }
+            length -= 1;
+            need(length);
+            String s = new String(_bytes, _position, (int) length,
+                    StandardCharsets.UTF_8);
+            _position += (int) length;
+            return s;
+        }
+
+        /** Returns an object ID written by Output.writeId. */
+        String readId() {
+            int kind = readByte();
+            if (kind == NO_ID) {
+                return null;
+            } else if (kind == STRING_ID) {
+                return readString();
+            } else if (kind != RAW_ID) {
+                throw new IllegalArgumentException("malformed object ID");
+            }
+            need(ID_BYTES);
+            char[] hex = new char[2 * ID_BYTES];
+            for (int i = 0; i < ID_BYTES; i += 1) {
+                int b = _bytes[_position + i] & 0xff;
+                hex[2 * i] = HEX_DIGITS[b >>> 4];
+                hex[2 * i + 1] = HEX_DIGITS[b & 0xf];
+            }
+            _position += ID_BYTES;
+            return new String(hex);
+        }
+
+        /** Adds to MAP the entries of a map written by
+         * Output.writeIdMap, and returns MAP.
+         * @param map map receiving the entries.
+         * @param <M> type of the map. */
+        <M extends Map<String, String>> M readIdMap(M map) {
+            for (long n = readNumber(); n > 0; n -= 1) {
+                String key = readString();
+                map.put(key, readId());
+            }
+            return map;
+        }
+
+        /** Returns a map written by Output.writeStringMap. */
+        HashMap<String, String> readStringMap() {
+            HashMap<String, String> map = new HashMap<>();
+            for (long n = readNumber(); n > 0; n -= 1) {
+                String key = readString();
+                map.put(key, readString());
+            }
+            return map;
+        }
+
+        /** Checks that N more bytes remain.
+         * @param n number of bytes. */
+        private void need(long n) {
+            if (n > _bytes.length - _position) {
+                throw new IllegalArgumentException("truncated object");
+            }
+        }
+
+        /** The encoded object. */
+        private final byte[] _bytes;
+
+        /** Index of the next byte to be read. */
+        private int _position;
+
+    }
+
+}
@@ -3,7 +3,11 @@ package gitlet;
 import java.io.Serializable;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 /** Commit class for Gitlet, implements serializable interface.
  *  @author Ayela Chughtai
@@ -11,20 +15,28 @@ import java.util.HashMap;
 @SuppressWarnings("ALL")
 public class Commit implements Serializable {
 
+    /** Serialization version of the class, fixed so that commits
+     * written by Java serialization before Codec can still be read. */
+    private static final long serialVersionUID = -8723897568765737475L;
+
     /** Constructor of the commit class.
-     * @param blobs Hashmap of file names to their blobs/contents.
+     * @param treeId ID of the tree of file names to their blob IDs.
      * @param branch Branch to which the commit is being made.
      * @param logMessage String of a message for the commit.
-     * @param parentId String of parent commitId.
+     * @param parentId String of parent commitId, or of the IDs of both
+     *                 parents separated by a space for a merge.
+     * @param generation one more than the greatest generation number
+     *                   of the parents.
      */
-    public Commit(String logMessage, String branch, HashMap<String, Blob> blobs,
-                  String parentId) {
+    public Commit(String logMessage, String branch,
+                  String treeId, String parentId, int generation) {
         _logMessage = logMessage;
         _dateTime = setTimeStamp();
         _branch = branch;
-        _blobs = blobs;
+        _treeId = treeId;
         _parentId = parentId;
-        _commitId = Utils.sha1('c' + _logMessage + _dateTime + _branch);
+        _generation = generation;
+        _commitId = contentId();
     }
 
     /**
@@ -34,9 +46,67 @@ public class Commit implements Serializable {
         _logMessage = "initial commit";
         _dateTime = "Wed Dec 31 16:00:00 1969 -0800";
         _branch = "master";
-        _blobs = new HashMap<String, Blob>();
-        _commitId = Utils.sha1('c' + _logMessage + _dateTime + _branch);
+        _treeId = Tree.empty();
         _parentId = "";
+        _generation = 1;
+        _commitId = contentId();
+    }
+
+    /** A commit read from IN, encoded in version VERSION of the format
+     * of Codec.
+     * @param in source.
+     * @param version version of the format. */
+    private Commit(Codec.Input in, int version) {
+        _commitId = in.readId();
+        ArrayList<String> parents = new ArrayList<>();
+        for (long n = in.readNumber(); n > 0; n -= 1) {
+            parents.add(in.readId());
+        }
+        _parentId = String.join(" ", parents);
+        _generation = (int) in.readNumber();
+        _treeId = in.readId();
+        _branch = in.readString();
+        _dateTime = in.readString();
+        _logMessage = in.readString();
+    }
+
+    /** Returns the commit encoded in IN in version VERSION of the format
+     * of Codec.
+     * @param in source.
+     * @param version version of the format. */
+    static Commit decode(Codec.Input in, int version) {
+        return new Commit(in, version);
+    }
+
+    /** Writes the fields of this commit to OUT, for Codec.
+     * @param out destination. */
+    void encode(Codec.Output out) {
+        out.writeId(_commitId);
+        encodeContents(out);
+    }
+
+    /** Writes the fields of this commit other than its ID to OUT.
+     * @param out destination. */
+    private void encodeContents(Codec.Output out) {
+        List<String> parents = getParentIds();
+        out.writeNumber(parents.size());
+        for (String parent : parents) {
+            out.writeId(parent);
+        }
+        out.writeNumber(_generation);
+        out.writeId(_treeId);
+        out.writeString(_branch);
+        out.writeString(_dateTime);
+        out.writeString(_logMessage);
+    }
+
+    /** Returns the ID of this commit: the SHA-1 hash of the encoding of
+     * its tree, parents, generation, branch, time and message, so that
+     * commits differing in any of them have different IDs. */
+    private String contentId() {
+        Codec.Output out = new Codec.Output();
+        encodeContents(out);
+        return Utils.sha1("c", out.toByteArray());
     }
 
     /** Sets date and time of the commit.
@@ -58,14 +128,37 @@ public class Commit implements Serializable {
         return _parentId;
     }
 
+    /** Returns the IDs of the parents of the commit, first parent
+     * first. */
+    public List<String> getParentIds() {
+        if (_parentId.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(_parentId.split(" "));
+    }
+
+    /** Returns the generation number of the commit: 1 for the initial
+     * commit, and otherwise one more than that of its newest parent. */
+    public int getGeneration() {
+        return _generation;
+    }
+
     /** Returns the date, day and time of the commit. */
     public String getDateTime() {
         return _dateTime;
     }
 
-    /** Returns a hashmap of file names to their blobs/contents
-     * in the commit. */
-    public HashMap<String, Blob> getBlobs() {
+    /** Returns the ID of the tree of files in the commit. */
+    public String getTreeId() {
+        return _treeId;
+    }
+
+    /** Returns a hashmap of file names to their blob IDs
+     * in the commit, read from its tree on first use. */
+    public HashMap<String, String> getBlobs() {
+        if (_blobs == null) {
+            _blobs = Tree.entries(_treeId);
+        }
         return _blobs;
     }
 
@@ -79,10 +172,13 @@ public class Commit implements Serializable {
         return _logMessage;
     }
 
-    /** Returns the blob of a corresponding file name.
+    /** Returns the blob ID of a corresponding file name.
      * @param fileName string name of file containing blob. */
-    public Blob getBlob(String fileName) {
-        return _blobs.get(fileName);
+    public String getBlobId(String fileName) {
+        if (_blobs != null) {
+            return _blobs.get(fileName);
+        }
+        return Tree.get(_treeId, fileName);
     }
 
     /** String of commitId.*/
@@ -91,8 +187,15 @@ public class Commit implements Serializable {
     /** String of parent commitId.*/
     private String _parentId;
 
-    /** Hashmap of file names to their blobs/contents.*/
-    private HashMap<String, Blob> _blobs;
+    /** Generation number of the commit.*/
+    private int _generation;
+
+    /** ID of the tree of file names to their blob IDs.*/
+    private String _treeId;
+
+    /** Hashmap of file names to their blob IDs, or null if not yet
+     * read.*/
+    private transient HashMap<String, String> _blobs;
 
     /** Branch to which the commit is being made.*/
     private String _branch;
@@ -0,0 +1,397 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** The commit graph of a Gitlet repository, kept in .gitlet/commit-graph
+ *  alongside the commits themselves, so that history can be walked
+ *  without reading any commit objects. After a header holding MAGIC,
+ *  VERSION and the length of a record, the file holds one fixed-width
+ *  record per commit, in the order the commits were made, so a commit's
+ *  parents always come before it. A record holds the commit's 20-byte ID,
+ *  the record numbers of its first and second parents (-1 if absent), its
+ *  generation number, a 64-bit hash of its log message, and a
+ *  BLOOM_BITS-bit Bloom filter of the names of the files it changed
+ *  relative to its first parent.
+ *  @author Ayela Chughtai
+ */
+class CommitGraph {
+
+    /** Number of bits in the changed-path Bloom filter of a commit. */
+    static final int BLOOM_BITS = 256;
+
+    /** Number of bits set in a Bloom filter per changed path. */
+    static final int BLOOM_HASHES = 4;
+
+    /** Length of a commit ID in bytes. */
+    private static final int ID_BYTES = 20;
+
+    /** Length of one record in bytes. */
+    static final int RECORD = ID_BYTES + 3 * 4 + 8 + BLOOM_BITS / 8;
+
+    /** First word of a commit graph file. */
+    private static final int MAGIC = 0x47434752;
+
+    /** Version of the commit graph file format. */
+    private static final int VERSION = 1;
+
+    /** Length of the file header in bytes. */
+    private static final int HEADER = 12;
+
+    /** Constructor of the commit graph class.
+     * @param file file holding the graph. */
+    CommitGraph(File file) {
+        _file = file;
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        return records().limit() / RECORD;
+    }
+
+    /** Adds a commit to the end of the graph.
+     * @param id ID of the commit.
+     * @param parentIds IDs of its parents, which must be in the graph.
+     * @param generation its generation number.
+     * @param message its log message.
+     * @param changed names of the files it changed.
+     * @param index index of this graph, used to find the parents. */
+    void append(String id, List<String> parentIds, int generation,
+                String message, Collection<String> changed,
+                CommitIndex index) {
+        int[] parents = {-1, -1};
+        for (int k = 0; k < parentIds.size() && k < 2; k += 1) {
+            parents[k] = index.findPrefix(parentIds.get(k));
+        }
+        long[] bloom = new long[BLOOM_BITS / 64];
+        for (String path : changed) {
+            for (int bit : bloomBits(path)) {
+                bloom[bit / 64] |= 1L << (bit % 64);
+            }
+        }
+        try (DataOutputStream out = appender()) {
+            out.write(PackFile.toBytes(id));
+            out.writeInt(parents[0]);
+            out.writeInt(parents[1]);
+            out.writeInt(generation);
+            out.writeLong(hashMessage(message));
+            for (long word : bloom) {
+                out.writeLong(word);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _records = null;
+    }
+
+    /** Appends copies of the given RECORDS of the graph FROM, which must
+     * be in increasing order and whose parents must each be either among
+     * them or already in this graph. INDEX is used to find the parents
+     * already here.
+     * @param from graph holding the records.
+     * @param records record numbers in FROM.
+     * @param index index of this graph. */
+    void appendFrom(CommitGraph from, List<Integer> records,
+                    CommitIndex index) {
+        HashMap<Integer, Integer> renumbered = new HashMap<>();
+        int next = size();
+        try (DataOutputStream out = appender()) {
+            for (int i : records) {
+                byte[] record = new byte[RECORD];
+                from.records().get(i * RECORD, record);
+                ByteBuffer copy = ByteBuffer.wrap(record);
+                for (int k = 0; k < 2; k += 1) {
+                    int parent = copy.getInt(ID_BYTES + 4 * k);
+                    if (parent >= 0) {
+                        Integer here = renumbered.get(parent);
+                        parent = here != null ? here
+                                : index.findPrefix(from.idAt(parent));
+                    }
+                    copy.putInt(ID_BYTES + 4 * k, parent);
+                }
+                out.write(record);
+                renumbered.put(i, next);
+                next += 1;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _records = null;
+    }
+
+    /** Rewrites the graph to hold only the commits in the records for
+     * which LIVE is true, which must include the parents of each. The new
+     * graph is written to a temporary file and renamed into place.
+     * @param live which records to keep. */
+    void retain(boolean[] live) {
+        int[] renumbered = new int[live.length];
+        File temp = new File(_file.getPath() + ".tmp");
+        ByteBuffer records = records();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        temp.toPath())))) {
+            writeHeader(out);
+            int next = 0;
+            for (int i = 0; i < live.length; i += 1) {
+                if (!live[i]) {
+                    renumbered[i] = -1;
+                    continue;
+                }
+                renumbered[i] = next;
+                next += 1;
+                byte[] record = new byte[RECORD];
+                records.get(i * RECORD, record);
+                ByteBuffer copy = ByteBuffer.wrap(record);
+                for (int k = 0; k < 2; k += 1) {
+                    int parent = copy.getInt(ID_BYTES + 4 * k);
+                    copy.putInt(ID_BYTES + 4 * k,
+                            parent < 0 ? -1 : renumbered[parent]);
+                }
+                out.write(record);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(temp.toPath(), _file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _records = null;
+    }
+
+    /** Returns the ID of the commit in record I.
+     * @param i record number. */
+    String idAt(int i) {
+        byte[] id = new byte[ID_BYTES];
+        records().get(i * RECORD, id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns the IDs of all commits, oldest first. */
+    List<String> ids() {
+        ArrayList<String> ids = new ArrayList<>();
+        for (int i = 0; i < size(); i += 1) {
+            ids.add(idAt(i));
+        }
+        return ids;
+    }
+
+    /** Returns the record number of the first parent of the commit in
+     * record I, or -1 if it has none.
+     * @param i record number. */
+    int firstParent(int i) {
+        return records().getInt(i * RECORD + ID_BYTES);
+    }
+
+    /** Returns the record number of the second parent of the commit in
+     * record I, or -1 if it is not a merge.
+     * @param i record number. */
+    int secondParent(int i) {
+        return records().getInt(i * RECORD + ID_BYTES + 4);
+    }
+
+    /** Returns the generation number of the commit in record I.
+     * @param i record number. */
+    int generation(int i) {
+        return records().getInt(i * RECORD + ID_BYTES + 8);
+    }
+
+    /** Returns the hash of the log message of the commit in record I.
+     * @param i record number. */
+    long messageHash(int i) {
+        return records().getLong(i * RECORD + ID_BYTES + 12);
+    }
+
+    /** Compares the first NIBBLES hex digits of the ID of the commit in
+     * record I with those of KEY, returning a negative number, zero or a
+     * positive number as the ID's digits are less, equal or greater.
+     * @param i record number.
+     * @param key ID bytes, of which the first NIBBLES digits are used.
+     * @param nibbles number of hex digits compared. */
+    int compareId(int i, byte[] key, int nibbles) {
+        ByteBuffer records = records();
+        for (int k = 0; k < nibbles; k += 1) {
+            int b = records.get(i * RECORD + k / 2) & 0xff;
+            int c = key[k / 2] & 0xff;
+            int shift = k % 2 == 0 ? 4 : 0;
+            int diff = ((b >> shift) & 0xf) - ((c >> shift) & 0xf);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    /** Compares the IDs of the commits in records A and B.
+     * @param a record number.
+     * @param b record number. */
+    int compareIds(int a, int b) {
+        ByteBuffer records = records();
+        for (int k = 0; k < ID_BYTES; k += 1) {
+            int diff = (records.get(a * RECORD + k) & 0xff)
+                    - (records.get(b * RECORD + k) & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the 64-bit FNV-1a hash of the UTF-8 bytes of MESSAGE.
+     * @param message log message. */
+    static long hashMessage(String message) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : message.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /** Returns false if the commit in record I certainly did not change
+     * the file PATH, and true if it may have.
+     * @param i record number.
+     * @param path name of a file. */
+    boolean mayHaveChanged(int i, String path) {
+        int start = i * RECORD + ID_BYTES + 20;
+        for (int bit : bloomBits(path)) {
+            long word = records().getLong(start + 8 * (bit / 64));
+            if ((word & (1L << (bit % 64))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the record number of the latest common ancestor of the
+     * commits in records A and B, or -1 if they have none. Commits are
+     * visited in decreasing order of generation number, marking which of
+     * A and B each is reachable from; the first commit reachable from
+     * both has the highest generation of any common ancestor, so no other
+     * common ancestor descends from it.
+     * @param a record number.
+     * @param b record number. */
+    int mergeBase(int a, int b) {
+        HashMap<Integer, Integer> reached = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+                Comparator.comparingInt(this::generation).reversed());
+        reached.put(a, 1);
+        queue.add(a);
+        reached.merge(b, 2, (x, y) -> x | y);
+        queue.add(b);
+        while (!queue.isEmpty()) {
+            int commit = queue.poll();
+            int flags = reached.get(commit);
+            if (flags == 3) {
+                return commit;
+            }
+            for (int parent : new int[] {firstParent(commit),
+                                         secondParent(commit)}) {
+                if (parent < 0) {
+                    continue;
+                }
+                Integer old = reached.get(parent);
+                if (old == null || (old | flags) != old) {
+                    reached.put(parent, old == null ? flags : old | flags);
+                    queue.add(parent);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Returns true if the commit in record A is an ancestor of, or the
+     * same as, the commit in record B.
+     * @param a record number.
+     * @param b record number. */
+    boolean isAncestor(int a, int b) {
+        return mergeBase(a, b) == a;
+    }
+
+    /** Returns the bits of a Bloom filter set for PATH.
+     * @param path name of a file. */
+    private static int[] bloomBits(String path) {
+        int h1 = path.hashCode();
+        int h2 = 0x811c9dc5;
+        for (int k = 0; k < path.length(); k += 1) {
+            h2 = (h2 ^ path.charAt(k)) * 0x01000193;
+        }
+        h2 |= 1;
+        int[] bits = new int[BLOOM_HASHES];
+        for (int k = 0; k < BLOOM_HASHES; k += 1) {
+            bits[k] = Math.floorMod(h1 + k * h2, BLOOM_BITS);
+        }
+        return bits;
+    }
+
+    /** Returns a stream appending to the graph file, which is started
+     * with a header if it is new. */
+    private DataOutputStream appender() throws IOException {
+        boolean fresh = !_file.isFile() || _file.length() == 0;
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        _file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND)));
+        if (fresh) {
+            writeHeader(out);
+        }
+        return out;
+    }
+
+    /** Writes the header of a graph file to OUT.
+     * @param out stream receiving the header. */
+    private static void writeHeader(DataOutputStream out)
+        throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(RECORD);
+    }
+
+    /** Returns the records of the graph, following the header, mapping
+     * the file on first use. */
+    private ByteBuffer records() {
+        if (_records == null) {
+            if (!_file.isFile() || _file.length() == 0) {
+                return ByteBuffer.allocate(0);
+            }
+            ByteBuffer map;
+            try (FileChannel channel = FileChannel.open(_file.toPath(),
+                    StandardOpenOption.READ)) {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (map.limit() < HEADER || map.getInt(0) != MAGIC
+                    || map.getInt(4) != VERSION
+                    || map.getInt(8) != RECORD) {
+                throw Utils.error("Bad commit graph %s.", _file);
+            }
+            _records = map.position(HEADER).slice();
+        }
+        return _records;
+    }
+
+    /** File holding the graph. */
+    private File _file;
+
+    /** Contents of the file, or null if not yet mapped. */
+    private ByteBuffer _records;
+
+}
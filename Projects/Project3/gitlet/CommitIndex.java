@@ -0,0 +1,255 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/** Sorted indexes over the commit graph, kept in .gitlet/commit-index,
+ *  for finding commits by abbreviated ID and by log message in
+ *  logarithmic time. The file covers the first COUNT records of the
+ *  graph and holds two tables of their record numbers: one sorted by
+ *  commit ID, and one sorted by the hash of the log message (then by
+ *  record number, so commits with the same message stay in the order they
+ *  were made). Both tables are binary searched.
+ *
+ *  Commits made since the file was written are not in the tables and are
+ *  searched one by one. Once there are more than TAIL_LIMIT of them, they
+ *  are sorted and merged into the tables, and the file is rewritten.
+ *  @author Ayela Chughtai
+ */
+class CommitIndex {
+
+    /** Largest number of commits not covered by the tables. */
+    static final int TAIL_LIMIT = 256;
+
+    /** First word of an index file. */
+    private static final int MAGIC = 0x47434958;
+
+    /** Version of the index file format. */
+    private static final int VERSION = 1;
+
+    /** Length of the file header in bytes. */
+    private static final int HEADER = 12;
+
+    /** Constructor of the commit index class.
+     * @param file file holding the index.
+     * @param graph commit graph being indexed. */
+    CommitIndex(File file, CommitGraph graph) {
+        _file = file;
+        _graph = graph;
+    }
+
+    /** Rewrites the index file if too many commits have been made since
+     * it was last written. */
+    void update() {
+        int count = count();
+        int size = _graph.size();
+        if (size - count > TAIL_LIMIT) {
+            write(count, size);
+        }
+    }
+
+    /** Rewrites the index file from scratch, after the commit graph has
+     * been rewritten. */
+    void rebuild() {
+        _table = null;
+        write(0, _graph.size());
+    }
+
+    /** Writes an index file covering the first SIZE records of the graph,
+     * merging those after the first COUNT into the existing tables.
+     * @param count number of records in the existing tables.
+     * @param size number of records in the graph. */
+    private void write(int count, int size) {
+        int[] byId = merge(0, count, size, _graph::compareIds);
+        int[] byMessage = merge(1, count, size,
+                Comparator.comparingLong(_graph::messageHash)
+                .thenComparingInt(i -> i));
+        File temp = new File(_file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            for (int i : byId) {
+                out.writeInt(i);
+            }
+            for (int i : byMessage) {
+                out.writeInt(i);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(temp.toPath(), _file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _table = null;
+    }
+
+    /** Returns the record number of the earliest commit whose ID starts
+     * with PREFIX, or -1 if there is none.
+     * @param prefix abbreviated or full commit ID, in lowercase hex. */
+    int findPrefix(String prefix) {
+        if (prefix.isEmpty() || prefix.length() > 40
+                || !prefix.matches("[0-9a-f]+")) {
+            return -1;
+        }
+        byte[] key = PackFile.toBytes(prefix
+                + "0".repeat(40 - prefix.length()));
+        int nibbles = prefix.length();
+        int count = count();
+        int found = -1;
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_graph.compareId(entry(0, count, mid), key, nibbles) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int k = lo; k < count; k += 1) {
+            int i = entry(0, count, k);
+            if (_graph.compareId(i, key, nibbles) != 0) {
+                break;
+            }
+            if (found < 0 || i < found) {
+                found = i;
+            }
+        }
+        if (found >= 0) {
+            return found;
+        }
+        for (int i = count; i < _graph.size(); i += 1) {
+            if (_graph.compareId(i, key, nibbles) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the record numbers, in increasing order, of the commits
+     * whose log messages have the same hash as MESSAGE. Callers must
+     * still compare the messages themselves.
+     * @param message log message. */
+    List<Integer> findMessage(String message) {
+        long hash = CommitGraph.hashMessage(message);
+        int count = count();
+        ArrayList<Integer> found = new ArrayList<>();
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_graph.messageHash(entry(1, count, mid)) < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int k = lo; k < count; k += 1) {
+            int i = entry(1, count, k);
+            if (_graph.messageHash(i) != hash) {
+                break;
+            }
+            found.add(i);
+        }
+        for (int i = count; i < _graph.size(); i += 1) {
+            if (_graph.messageHash(i) == hash) {
+                found.add(i);
+            }
+        }
+        return found;
+    }
+
+    /** Returns the entries of table T for records COUNT up to SIZE of the
+     * graph sorted by ORDER and merged with the existing entries.
+     * @param t table number.
+     * @param count number of records in the table.
+     * @param size number of records in the graph.
+     * @param order order of the table. */
+    private int[] merge(int t, int count, int size,
+                        Comparator<Integer> order) {
+        Integer[] tail = new Integer[size - count];
+        for (int k = 0; k < tail.length; k += 1) {
+            tail[k] = count + k;
+        }
+        Arrays.sort(tail, order);
+        int[] result = new int[size];
+        int old = 0;
+        int added = 0;
+        for (int k = 0; k < size; k += 1) {
+            if (added == tail.length || (old < count && order.compare(
+                    entry(t, count, old), tail[added]) <= 0)) {
+                result[k] = entry(t, count, old);
+                old += 1;
+            } else {
+                result[k] = tail[added];
+                added += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the Kth entry of table T.
+     * @param t table number.
+     * @param count number of records in the table.
+     * @param k position in the table. */
+    private int entry(int t, int count, int k) {
+        return table().getInt(HEADER + 4 * (t * count + k));
+    }
+
+    /** Returns the number of records of the graph covered by the
+     * tables. */
+    private int count() {
+        ByteBuffer table = table();
+        if (table.limit() < HEADER || table.getInt(0) != MAGIC
+                || table.getInt(4) != VERSION
+                || table.getInt(8) > _graph.size()) {
+            return 0;
+        }
+        return table.getInt(8);
+    }
+
+    /** Returns the contents of the index file, mapping it on first use. */
+    private ByteBuffer table() {
+        if (_table == null) {
+            if (!_file.isFile()) {
+                return ByteBuffer.allocate(0);
+            }
+            try (FileChannel channel = FileChannel.open(_file.toPath(),
+                    StandardOpenOption.READ)) {
+                _table = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return _table;
+    }
+
+    /** File holding the index. */
+    private File _file;
+
+    /** Commit graph being indexed. */
+    private CommitGraph _graph;
+
+    /** Contents of the index file, or null if not yet mapped. */
+    private ByteBuffer _table;
+
+}
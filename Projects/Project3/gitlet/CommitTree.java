@@ -1,31 +1,78 @@
 package gitlet;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 /** CommitTree class for Gitlet, implements serializable interface.
+ *  Only branch pointers and commit IDs are serialized with the tree;
+ *  the commits themselves live in the object store and are read on
+ *  demand.
  *  @author Ayela Chughtai
  */
 @SuppressWarnings("ALL")
 public class CommitTree implements Serializable {
 
+    /** Serialization version of the class, fixed so that commit trees
+     * written by Java serialization before Codec can still be read. */
+    private static final long serialVersionUID = 1156965777469418059L;
+
+    /** Largest number of files merged at once. */
+    static final int MERGE_THREADS = 16;
+
     /** Constructor of the commit tree class. */
     public CommitTree() {
         _branches = new HashMap<>();
-        _allCommits = new HashMap<>();
         Commit initialCommit = new Commit();
-        _branches.put("master", initialCommit);
-        _allCommits.put(initialCommit.getCommitId(), initialCommit);
+        putCommit(initialCommit);
+        _branches.put("master", initialCommit.getCommitId());
         _currentBranch = "master";
-        _lastCommit = initialCommit;
-        _splitPoints = new HashMap<>();
+        _lastCommit = initialCommit.getCommitId();
+    }
+
+    /** A commit tree read from IN, encoded in version VERSION of the
+     * format of Codec.
+     * @param in source.
+     * @param version version of the format. */
+    private CommitTree(Codec.Input in, int version) {
+        _branches = in.readIdMap(new HashMap<>());
+        _remotes = in.readStringMap();
+        _currentBranch = in.readString();
+        _lastCommit = in.readId();
+    }
+
+    /** Returns the commit tree encoded in IN in version VERSION of the
+     * format of Codec.
+     * @param in source.
+     * @param version version of the format. */
+    static CommitTree decode(Codec.Input in, int version) {
+        return new CommitTree(in, version);
+    }
+
+    /** Writes the branches, remotes, current branch and latest commit to
+     * OUT, for Codec.
+     * @param out destination. */
+    void encode(Codec.Output out) {
+        out.writeIdMap(_branches);
+        out.writeStringMap(getRemotes());
+        out.writeString(_currentBranch);
+        out.writeId(_lastCommit);
     }
 
-    /** Returns the blob of a corresponding file name.
+    /** Returns the blob ID of a corresponding file name.
      * @param fileName is name of the file. */
-    public Blob getLatestFiles(String fileName) {
-        return _lastCommit.getBlob(fileName);
+    public String getLatestFiles(String fileName) {
+        return getLastCommit().getBlobId(fileName);
     }
 
     /** Returns string pointer to the name of the current branch. */
@@ -39,120 +86,481 @@ public class CommitTree implements Serializable {
         _currentBranch = branchName;
     }
 
-    /** Returns hashMap of branch names to commit heads in those branches. */
-    public HashMap<String, Commit> getBranches() {
+    /** Returns hashMap of branch names to commit IDs of the heads
+     * of those branches. */
+    public HashMap<String, String> getBranches() {
         return _branches;
     }
 
+    /** Returns hashMap of remote names to the paths of their .gitlet
+     * directories. */
+    public HashMap<String, String> getRemotes() {
+        if (_remotes == null) {
+            _remotes = new HashMap<>();
+        }
+        return _remotes;
+    }
+
     /** Returns branch head commit for a given branch.
      * @param branchName . */
     public Commit getBranchHead(String branchName) {
-        return _branches.get(branchName);
+        return getCommit(_branches.get(branchName));
     }
 
     /** Returns pointer to latest commit. */
     public Commit getLastCommit() {
-        return _lastCommit;
+        return getCommit(_lastCommit);
     }
 
     /** Sets pointer to latest commit.
      * @param commit . */
     public void setLastCommit(Commit commit) {
-        _lastCommit = commit;
+        _lastCommit = commit.getCommitId();
+    }
+
+    /** Returns the ID of the latest commit. */
+    public String getLastCommitId() {
+        return _lastCommit;
+    }
+
+    /** Sets the ID of the latest commit.
+     * @param commitId . */
+    public void setLastCommitId(String commitId) {
+        _lastCommit = commitId;
     }
 
-    /** Returns commit object for a given ID.
+    /** Returns commit object for a given ID, or null if there is none.
      * @param commitId . */
     public Commit getCommit(String commitId) {
-        return _allCommits.get(commitId);
+        if (commitId == null) {
+            return null;
+        }
+        if (_cache == null) {
+            _cache = new HashMap<>();
+        }
+        Commit commit = _cache.get(commitId);
+        if (commit == null
+                && Main.getObjectStore().contains(commitId)) {
+            commit = Main.getObjectStore().readObject(commitId,
+                    Commit.class);
+            _cache.put(commitId, commit);
+        }
+        return commit;
+    }
+
+    /** Writes a new commit to the object store and adds it to the
+     * commit graph, along with the names of the files it changed.
+     * @param commit . */
+    private void putCommit(Commit commit) {
+        Main.getObjectStore().writeObject(commit.getCommitId(), commit);
+        if (_cache == null) {
+            _cache = new HashMap<>();
+        }
+        _cache.put(commit.getCommitId(), commit);
+        List<String> parentIds = commit.getParentIds();
+        HashSet<String> changed = new HashSet<>();
+        Tree.diff(parentIds.isEmpty() ? null
+                : getCommit(parentIds.get(0)).getTreeId(),
+                commit.getTreeId(), changed);
+        getGraph().append(commit.getCommitId(), parentIds,
+                commit.getGeneration(), commit.getLogMessage(), changed,
+                getIndex());
+        getIndex().update();
     }
 
-    /** Returns Hashmap of all commits, mapping commitIds to commit objects. */
-    public HashMap<String, Commit> getAllCommits() {
-        return _allCommits;
+    /** Returns the commit graph, which records the parents, generation
+     * numbers and changed files of all commits. */
+    public CommitGraph getGraph() {
+        if (_graph == null) {
+            _graph = new CommitGraph(Utils.join(
+                    Main.getObjectStore().getDir().getParentFile(),
+                    "commit-graph"));
+        }
+        return _graph;
     }
 
-    /** Returns Hashmap of all branch names to split points. */
-    public HashMap<String, Commit> getSplitPoints() {
-        return _splitPoints;
+    /** Returns the sorted indexes of commit IDs and log messages. */
+    public CommitIndex getIndex() {
+        if (_index == null) {
+            _index = new CommitIndex(Utils.join(
+                    Main.getObjectStore().getDir().getParentFile(),
+                    "commit-index"), getGraph());
+        }
+        return _index;
     }
 
-    /** Merges changes made by this branch into the other.
-     * @param branchName name of branch to be merged. */
-    public void merge(String branchName) {
-        String currentBranch = _currentBranch;
-        Commit splitPoint = _splitPoints.get(branchName + currentBranch);
-        Commit currHead = getBranchHead(currentBranch);
-        Commit branchHead = getBranchHead(branchName);
-        for (String fileName: splitPoint.getBlobs().keySet()) {
-            if (!isRemoved(branchHead, fileName)
-                    && !isRemoved(currHead, fileName)) {
-                Blob given = branchHead.getBlob(fileName);
-                Blob split = splitPoint.getBlob(fileName);
-                Blob curr = currHead.getBlob(fileName);
-                if (isModified(given, split) && !isModified(curr, split)) {
-                    Utils.join(System.getProperty("user.dir"),
-                            fileName).delete();
-                    Utils.writeContents(Utils.join(
-                            System.getProperty("user.dir"),
-                            fileName), given.getFileContentsString());
-                    Main.getStagingArea().add(fileName, given);
-                } else if (isModified(given, split) && isModified(curr, split)
-                        && isModified(given, curr)) {
-                    System.out.println("Encountered a merge conflict.");
-                    Utils.join(System.getProperty("user.dir"),
-                            fileName).delete();
-                    String newContents = "<<<<<<< HEAD" + "\n"
-                            + curr.getFileContentsString() + "\n" + "======="
-                            + given.getFileContentsString();
-                    Utils.writeContents(Utils.join(System.getProperty(
-                            "user.dir"), fileName), newContents);
+    /** Returns the IDs of all commits ever made, oldest first. */
+    public List<String> getAllCommitIds() {
+        return getGraph().ids();
+    }
+
+    /** Returns the full ID of the commit whose ID starts with PREFIX,
+     * or null if there is no such commit. If several commits match, the
+     * earliest is chosen.
+     * @param prefix abbreviated commit ID. */
+    public String findCommitId(String prefix) {
+        int i = getIndex().findPrefix(prefix);
+        return i < 0 ? null : getGraph().idAt(i);
+    }
+
+    /** Returns the IDs of all commits with the given log message, oldest
+     * first.
+     * @param logMessage log message. */
+    public List<String> findCommitIds(String logMessage) {
+        ArrayList<String> commitIds = new ArrayList<>();
+        for (int i : getIndex().findMessage(logMessage)) {
+            String commitId = getGraph().idAt(i);
+            if (getCommit(commitId).getLogMessage().equals(logMessage)) {
+                commitIds.add(commitId);
+            }
+        }
+        return commitIds;
+    }
+
+    /** Returns a map from the ID of each version of each file to the ID
+     * of the version of the same file committed before it. A file new to
+     * a commit that was renamed from a file of its first parent follows
+     * the version it was renamed from. A version is given a previous one
+     * only when it first appears, so following the map from any version
+     * never cycles. */
+    public HashMap<String, String> getPreviousVersions() {
+        HashMap<String, String> previous = new HashMap<>();
+        HashMap<String, String> latest = new HashMap<>();
+        HashSet<String> seen = new HashSet<>();
+        CommitGraph graph = getGraph();
+        for (int i = 0; i < graph.size(); i += 1) {
+            Commit commit = getCommit(graph.idAt(i));
+            ArrayList<String> fresh = new ArrayList<>();
+            for (Map.Entry<String, String> entry
+                     : commit.getBlobs().entrySet()) {
+                String blobId = entry.getValue();
+                String prev = latest.put(entry.getKey(), blobId);
+                if (seen.add(blobId)) {
+                    if (prev != null) {
+                        previous.put(blobId, prev);
+                    } else {
+                        fresh.add(entry.getKey());
+                    }
                 }
-            } else if (isRemoved(branchHead, fileName)
-                    && !isRemoved(currHead, fileName)) {
-                Blob split = splitPoint.getBlob(fileName);
-                Blob curr = currHead.getBlob(fileName);
-                if (!isModified(curr, split)) {
-                    Main.getStagingArea().remove(fileName, curr);
+            }
+            int parent = graph.firstParent(i);
+            if (fresh.isEmpty() || parent < 0) {
+                continue;
+            }
+            Commit parentCommit = getCommit(graph.idAt(parent));
+            TreeMap<String, String> renames =
+                    Renames.between(parentCommit, commit);
+            for (String fileName : fresh) {
+                if (renames.containsKey(fileName)) {
+                    previous.put(commit.getBlobId(fileName),
+                            parentCommit.getBlobId(renames.get(fileName)));
                 }
-                Utils.join(System.getProperty("user.dir"),
-                        fileName).delete();
             }
         }
-        for (String fileName: branchHead.getBlobs().keySet()) {
-            if (!splitPoint.getBlobs().containsKey(fileName)
-                    && !currHead.getBlobs().containsKey(fileName)) {
-                Blob given = branchHead.getBlob(fileName);
-                Utils.join(System.getProperty("user.dir"), fileName).delete();
-                Utils.writeContents(Utils.join(System.getProperty("user.dir"),
-                        fileName), given.getFileContentsString());
-                Main.getStagingArea().add(fileName, given);
+        return previous;
+    }
+
+    /** Deletes every commit, tree and blob that cannot be reached from a
+     * branch head, the current commit or the staging area, and packs the
+     * rest. Objects stored at or after CUTOFF are kept regardless, along
+     * with everything reachable from them, but are left loose, so that
+     * they keep the time at which they were stored and are deleted by
+     * the first gc after it falls before the cutoff. The commit graph and
+     * its indexes are rewritten to hold only the commits kept, before any
+     * object is deleted.
+     * @param cutoff time in milliseconds since the epoch. */
+    public void collectGarbage(long cutoff) {
+        ObjectStore store = Main.getObjectStore();
+        CommitGraph graph = getGraph();
+        CommitIndex index = getIndex();
+        boolean[] live = new boolean[graph.size()];
+        boolean[] recent = new boolean[graph.size()];
+        ArrayDeque<Integer> pending = new ArrayDeque<>();
+        for (String commitId : _branches.values()) {
+            pending.push(index.findPrefix(commitId));
+        }
+        pending.push(index.findPrefix(_lastCommit));
+        markAncestors(graph, pending, live);
+        for (int i = 0; i < live.length; i += 1) {
+            if (!live[i] && store.lastModified(graph.idAt(i)) >= cutoff) {
+                pending.push(i);
+            }
+        }
+        markAncestors(graph, pending, recent);
+        HashSet<String> keep = new HashSet<>();
+        HashSet<String> loose = new HashSet<>();
+        for (int i = 0; i < live.length; i += 1) {
+            if (live[i]) {
+                keep.add(graph.idAt(i));
+                Tree.reachable(getCommit(graph.idAt(i)).getTreeId(), keep);
+            }
+        }
+        StagingArea stage = Main.getStagingArea();
+        keep.addAll(stage.getAdded().values());
+        keep.addAll(stage.getRemoving().values());
+        keep.addAll(stage.getTracked().values());
+        for (int i = 0; i < recent.length; i += 1) {
+            if (recent[i] && !live[i]) {
+                loose.add(graph.idAt(i));
+                Tree.reachable(getCommit(graph.idAt(i)).getTreeId(), loose);
             }
         }
+        for (String id : store.allIds()) {
+            if (!keep.contains(id) && store.lastModified(id) >= cutoff) {
+                loose.add(id);
+            }
+        }
+        keep.removeIf(id -> !store.contains(id));
+        for (String id : new ArrayList<>(keep)) {
+            keep.addAll(store.chunkIds(id));
+        }
+        loose.removeIf(id -> keep.contains(id) || !store.contains(id));
+        for (String id : new ArrayList<>(loose)) {
+            for (String chunkId : store.chunkIds(id)) {
+                if (!keep.contains(chunkId)) {
+                    loose.add(chunkId);
+                }
+            }
+        }
+        for (int i = 0; i < live.length; i += 1) {
+            live[i] |= recent[i];
+        }
+        graph.retain(live);
+        index.rebuild();
+        store.repack(keep, loose, getPreviousVersions());
     }
 
-    /** Checks if content of blobs is different.
-     * @param given blob.
-     * @param splitPoint blob.
-     * @return boolean out. */
-    private static boolean isModified(Blob given, Blob splitPoint) {
-        boolean out = false;
-        if (splitPoint.getBlobId().equals(given.getBlobId())) {
-            out = true;
+    /** Marks in MARKED the commits of GRAPH whose indices are in PENDING,
+     * and all their ancestors, emptying PENDING. Negative indices, for
+     * missing commits, are ignored.
+     * @param graph the commit graph.
+     * @param pending indices of commits.
+     * @param marked which commits have been marked. */
+    private static void markAncestors(CommitGraph graph,
+                                      ArrayDeque<Integer> pending,
+                                      boolean[] marked) {
+        while (!pending.isEmpty()) {
+            int i = pending.pop();
+            if (i >= 0 && !marked[i]) {
+                marked[i] = true;
+                pending.push(graph.firstParent(i));
+                pending.push(graph.secondParent(i));
+            }
         }
-        return out;
     }
 
-    /** Checks if blob is still there.
-     * @param commit commit.
-     * @param fileName string.
-     * @return boolean out.*/
-    private static boolean isRemoved(Commit commit, String fileName) {
-        boolean out = false;
-        if (!commit.getBlobs().containsKey(fileName)) {
-            out = true;
+    /** Returns the latest common ancestor of commits A and B, the split
+     * point for merging them. It is found in the commit graph, so only
+     * the split point itself is read from the object store.
+     * @param a commit.
+     * @param b commit. */
+    public Commit findSplitPoint(Commit a, Commit b) {
+        CommitGraph graph = getGraph();
+        CommitIndex index = getIndex();
+        int base = graph.mergeBase(index.findPrefix(a.getCommitId()),
+                index.findPrefix(b.getCommitId()));
+        return base < 0 ? null : getCommit(graph.idAt(base));
+    }
+
+    /** Merges the given branch into the current one, updating and
+     * staging the files of the working directory. A file changed on only
+     * one side since SPLITPOINT takes that change. A file changed on both
+     * sides is merged line by line, so changes to different parts of it
+     * combine cleanly and only overlapping changes conflict; these merges
+     * run in parallel, on at most MERGE_THREADS threads. A file renamed
+     * on one side is merged under its new name with the changes made to
+     * it under its old name on the other. Files outside the
+     * sparse-checkout patterns are merged and staged without being
+     * written, unless they conflict.
+     * @param branchName name of the given branch.
+     * @param splitPoint latest common ancestor of the two heads. */
+    public void merge(String branchName, Commit splitPoint) {
+        try (Trace.Span span = Trace.span("merge")) {
+            mergeFiles(branchName, splitPoint);
         }
-        return out;
+    }
+
+    /** Merges the files of the given branch into the current one, as
+     * described for merge.
+     * @param branchName name of the given branch.
+     * @param splitPoint latest common ancestor of the two heads. */
+    private void mergeFiles(String branchName, Commit splitPoint) {
+        Commit currHead = getBranchHead(_currentBranch);
+        Commit branchHead = getBranchHead(branchName);
+        TreeSet<String> fileNames = new TreeSet<>();
+        fileNames.addAll(splitPoint.getBlobs().keySet());
+        fileNames.addAll(currHead.getBlobs().keySet());
+        fileNames.addAll(branchHead.getBlobs().keySet());
+        HashMap<String, String[]> sources = new HashMap<>();
+        HashSet<String> moved = new HashSet<>();
+        TreeMap<String, String> taken = new TreeMap<>();
+        followRenames(splitPoint, currHead, branchHead, sources, moved,
+                taken);
+        ArrayList<String[]> contested = new ArrayList<>();
+        for (String fileName : fileNames) {
+            if (moved.contains(fileName)) {
+                continue;
+            }
+            String[] names = sources.getOrDefault(fileName,
+                    new String[] {fileName, fileName, fileName});
+            String split = splitPoint.getBlobId(names[0]);
+            String curr = currHead.getBlobId(names[1]);
+            String given = branchHead.getBlobId(names[2]);
+            String result;
+            if (Objects.equals(given, split) || Objects.equals(curr, given)) {
+                result = curr;
+            } else if (Objects.equals(curr, split)) {
+                result = given;
+            } else {
+                contested.add(new String[] {fileName, split, curr, given});
+                continue;
+            }
+            if (!Objects.equals(result, currHead.getBlobId(fileName))) {
+                taken.put(fileName, result);
+            }
+        }
+        List<String[]> merged = mergeAll(contested);
+        HashSet<String> conflicted = new HashSet<>();
+        for (String[] result : merged) {
+            taken.put(result[0], result[1]);
+            if (result[2] != null) {
+                conflicted.add(result[0]);
+            }
+        }
+        StagingArea stage = Main.getStagingArea();
+        for (Map.Entry<String, String> entry : taken.entrySet()) {
+            String fileName = entry.getKey();
+            if (entry.getValue() == null) {
+                stage.remove(fileName, currHead.getBlobId(fileName));
+            } else {
+                if (Main.getSparse().includes(fileName)
+                        || conflicted.contains(fileName)) {
+                    Blob.writeFile(entry.getValue(), fileName);
+                }
+                stage.add(fileName, entry.getValue());
+            }
+        }
+        if (!conflicted.isEmpty()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /** Finds the files renamed since SPLITPOINT on one side of a merge of
+     * the heads CURRHEAD and BRANCHHEAD and changed or kept under their
+     * old names on the other, so that the changes on both sides are
+     * merged under the new name. Maps each new name, in SOURCES, to the
+     * names of the file at the split point and in the current and given
+     * heads. Adds the old names to MOVED, and puts in TAKEN a removal of
+     * each old name that the current head still has.
+     * @param splitPoint latest common ancestor of the two heads.
+     * @param currHead head of the current branch.
+     * @param branchHead head of the given branch.
+     * @param sources map receiving the names merged into each new name.
+     * @param moved set receiving the old names.
+     * @param taken map receiving the removals. */
+    private static void followRenames(Commit splitPoint, Commit currHead,
+                                      Commit branchHead,
+                                      HashMap<String, String[]> sources,
+                                      HashSet<String> moved,
+                                      TreeMap<String, String> taken) {
+        TreeMap<String, String> currRenames =
+                Renames.between(splitPoint, currHead);
+        TreeMap<String, String> givenRenames =
+                Renames.between(splitPoint, branchHead);
+        HashMap<String, String> givenOld = new HashMap<>();
+        for (Map.Entry<String, String> rename : givenRenames.entrySet()) {
+            givenOld.put(rename.getValue(), rename.getKey());
+        }
+        for (Map.Entry<String, String> rename : currRenames.entrySet()) {
+            String fileName = rename.getKey();
+            String old = rename.getValue();
+            String givenName = givenOld.get(old);
+            if (givenName == null && branchHead.getBlobId(old) != null
+                    && branchHead.getBlobId(fileName) == null) {
+                sources.put(fileName, new String[] {old, fileName, old});
+                moved.add(old);
+            } else if (fileName.equals(givenName)) {
+                sources.put(fileName,
+                        new String[] {old, fileName, fileName});
+                moved.add(old);
+            }
+        }
+        for (Map.Entry<String, String> rename : givenRenames.entrySet()) {
+            String fileName = rename.getKey();
+            String old = rename.getValue();
+            if (!currRenames.containsValue(old)
+                    && currHead.getBlobId(old) != null
+                    && currHead.getBlobId(fileName) == null) {
+                sources.put(fileName, new String[] {old, old, fileName});
+                moved.add(old);
+                taken.put(old, null);
+            }
+        }
+    }
+
+    /** Merges each file in CONTESTED, given as its name and the blob IDs
+     * of its split point, current and given versions (null where it is
+     * absent), in parallel. Returns, for each, its name, the ID of the
+     * stored merged blob, and null if the merge was clean.
+     * @param contested files changed in both branches. */
+    private static List<String[]> mergeAll(List<String[]> contested) {
+        if (contested.size() < 2) {
+            ArrayList<String[]> merged = new ArrayList<>();
+            for (String[] file : contested) {
+                merged.add(mergeFile(file));
+            }
+            return merged;
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.min(MERGE_THREADS,
+                Runtime.getRuntime().availableProcessors()));
+        try {
+            return pool.submit(() -> contested.parallelStream()
+                    .map(CommitTree::mergeFile)
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Three-way merges the file FILE, given as its name and the blob IDs
+     * of its split point, current and given versions, treating an absent
+     * version as empty. Stores the result and returns the file name, its
+     * blob ID, and null if the merge was clean.
+     * @param file name and versions of the file. */
+    private static String[] mergeFile(String[] file) {
+        try (Trace.Span span = Trace.span("mergeFile")) {
+            return diff3(file);
+        }
+    }
+
+    /** Three-way merges the file FILE, as described for mergeFile.
+     * @param file name and versions of the file. */
+    private static String[] diff3(String[] file) {
+        Diff3 merge = new Diff3(lines(file[1]), lines(file[2]),
+                lines(file[3]));
+        byte[] contents = merge.getResult();
+        String blobId = Utils.sha1("b", contents);
+        Main.getObjectStore().writeBlob(blobId, contents);
+        return new String[] {file[0], blobId,
+            merge.getConflicts() > 0 ? "conflict" : null};
+    }
+
+    /** Returns the lines of the blob with the given ID, or none if BLOBID
+     * is null.
+     * @param blobId ID of a blob, or null. */
+    private static List<String> lines(String blobId) {
+        if (blobId == null) {
+            return new ArrayList<>();
+        }
+        return Diff.lines(Blob.readContents(blobId));
     }
 
     /** Saves a snapshot of current files and staging area
@@ -162,57 +570,13 @@ public class CommitTree implements Serializable {
      * @param removing files staged for removal.
      * @param branchHead commit.
      * @param currHead commit. */
-    public void mergeCommit(String logMessage, HashMap<String, Blob> added,
-                            HashMap<String, Blob> removing, Commit currHead,
+    public void mergeCommit(String logMessage, HashMap<String, String> added,
+                            HashMap<String, String> removing, Commit currHead,
                             Commit branchHead) {
-        HashMap<String, Blob> newCommitBlobs = new HashMap<>();
-        if (_lastCommit.getLogMessage().equals("initial commit")) {
-            for (String fileName : added.keySet()) {
-                newCommitBlobs.put(fileName, added.get(fileName));
-                Main.getStagingArea().getTracked().put(fileName,
-                        added.get(fileName));
-            }
-        } else {
-            for (String fileName : added.keySet()) {
-                if (_lastCommit.getBlobs().containsKey(fileName)) {
-                    if (_lastCommit.getBlobs().get(fileName).getBlobId(
-                    ).equals(added.get(fileName).getBlobId())) {
-                        newCommitBlobs.put(fileName,
-                                _lastCommit.getBlobs().get(fileName));
-                    } else {
-                        newCommitBlobs.put(fileName, added.get(fileName));
-                    }
-                } else {
-                    newCommitBlobs.put(fileName, added.get(fileName));
-                    Main.getStagingArea().getTracked().put(fileName,
-                            added.get(fileName));
-                }
-            }
-            for (String fileName : _lastCommit.getBlobs().keySet()) {
-                if (!added.containsKey(fileName)) {
-                    newCommitBlobs.put(fileName,
-                            _lastCommit.getBlobs().get(fileName));
-                }
-            }
-        }
-        for (String fileName:  removing.keySet()) {
-            if (newCommitBlobs.containsKey(fileName)) {
-                newCommitBlobs.remove(fileName);
-                Main.getStagingArea().getRemoved().put(fileName,
-                        removing.get(fileName));
-                Main.getStagingArea().getRemoving().remove(fileName);
-            }
-            Main.getStagingArea().getTracked().remove(fileName);
-        }
-        Commit newCommit = new Commit(logMessage, _currentBranch,
-                newCommitBlobs, currHead.getCommitId()
-                + " " + branchHead.getCommitId());
-        _currentBranch = newCommit.getBranch();
-        _lastCommit = newCommit;
-        _branches.put(_currentBranch, newCommit);
-        _allCommits.put(newCommit.getCommitId(), newCommit);
-        Main.getStagingArea().getAdded().clear();
-        Main.getStagingArea().getRemoving().clear();
+        makeCommit(logMessage, added, removing, currHead.getCommitId()
+                + " " + branchHead.getCommitId(),
+                1 + Math.max(currHead.getGeneration(),
+                        branchHead.getGeneration()));
     }
 
     /** Saves a snapshot of current files and staging area
@@ -220,86 +584,82 @@ public class CommitTree implements Serializable {
      * @param logMessage string of message for commit.
      * @param added files staged for commit.
      * @param removing files staged for removal. */
-    public void commit(String logMessage, HashMap<String, Blob> added,
-                              HashMap<String, Blob> removing) {
-        HashMap<String, Blob> newCommitBlobs = new HashMap<>();
-        if (_lastCommit.getLogMessage().equals("initial commit")) {
-            for (String fileName : added.keySet()) {
-                newCommitBlobs.put(fileName, added.get(fileName));
-                Main.getStagingArea().getTracked().put(fileName,
-                        added.get(fileName));
-            }
-        } else {
-            for (String fileName : added.keySet()) {
-                if (_lastCommit.getBlobs().containsKey(fileName)) {
-                    if (_lastCommit.getBlobs().get(fileName).getBlobId(
-                    ).equals(added.get(fileName).getBlobId())) {
-                        newCommitBlobs.put(fileName,
-                                _lastCommit.getBlobs().get(fileName));
-                    } else {
-                        newCommitBlobs.put(fileName, added.get(fileName));
-                    }
-                } else {
-                    newCommitBlobs.put(fileName, added.get(fileName));
-                    Main.getStagingArea().getTracked().put(fileName,
-                            added.get(fileName));
-                }
+    public void commit(String logMessage, HashMap<String, String> added,
+                              HashMap<String, String> removing) {
+        Commit lastCommit = getLastCommit();
+        makeCommit(logMessage, added, removing, lastCommit.getCommitId(),
+                1 + lastCommit.getGeneration());
+    }
+
+    /** Makes a commit of the latest commit's tree with the staged changes
+     * applied, and clears the staging area. Only the staged files are
+     * looked up, and only the tree nodes holding them are rewritten.
+     * @param logMessage string of message for commit.
+     * @param added files staged for commit.
+     * @param removing files staged for removal.
+     * @param parentId ID of the parent, or of both parents separated by
+     *                 a space.
+     * @param generation generation number of the commit. */
+    private void makeCommit(String logMessage, HashMap<String, String> added,
+                            HashMap<String, String> removing,
+                            String parentId, int generation) {
+        Commit lastCommit = getLastCommit();
+        StagingArea stage = Main.getStagingArea();
+        TreeMap<String, String> changes = new TreeMap<>();
+        for (Map.Entry<String, String> entry : added.entrySet()) {
+            String fileName = entry.getKey();
+            String before = lastCommit.getBlobId(fileName);
+            if (before == null) {
+                stage.getTracked().put(fileName, entry.getValue());
             }
-            for (String fileName : _lastCommit.getBlobs().keySet()) {
-                if (!added.containsKey(fileName)) {
-                    newCommitBlobs.put(fileName,
-                            _lastCommit.getBlobs().get(fileName));
-                }
+            if (!entry.getValue().equals(before)) {
+                changes.put(fileName, entry.getValue());
             }
         }
-        for (String fileName:  removing.keySet()) {
-            if (newCommitBlobs.containsKey(fileName)) {
-                newCommitBlobs.remove(fileName);
-                Main.getStagingArea().getRemoved().put(fileName,
-                        removing.get(fileName));
-                Main.getStagingArea().getRemoving().remove(fileName);
+        for (Map.Entry<String, String> entry
+                 : new ArrayList<>(removing.entrySet())) {
+            String fileName = entry.getKey();
+            if (changes.get(fileName) != null
+                    || lastCommit.getBlobId(fileName) != null) {
+                changes.put(fileName, null);
+                stage.getRemoved().put(fileName, entry.getValue());
+                stage.getRemoving().remove(fileName);
             }
-            Main.getStagingArea().getTracked().remove(fileName);
+            stage.getTracked().remove(fileName);
         }
-        Commit newCommit =  new Commit(logMessage, _currentBranch,
-                    newCommitBlobs, _lastCommit.getCommitId());
+        Commit newCommit = new Commit(logMessage, _currentBranch,
+                Tree.update(lastCommit.getTreeId(), changes), parentId,
+                generation);
+        putCommit(newCommit);
         _currentBranch = newCommit.getBranch();
-        _lastCommit = newCommit;
-        _branches.put(_currentBranch, newCommit);
-        _allCommits.put(newCommit.getCommitId(), newCommit);
-        Main.getStagingArea().getAdded().clear();
-        Main.getStagingArea().getRemoving().clear();
+        _lastCommit = newCommit.getCommitId();
+        _branches.put(_currentBranch, _lastCommit);
+        stage.getAdded().clear();
+        stage.getRemoving().clear();
     }
 
     /** Creates a new branch with the given name and points it
      * at the current head node.
      * @param branchName name of branch to be made. */
     public void branch(String branchName) {
-        Commit head = getBranchHead(_currentBranch);
-        _branches.put(branchName, head);
-        _splitPoints.put(branchName + _currentBranch, head);
-        _splitPoints.put(_currentBranch + branchName, head);
+        _branches.put(branchName, _branches.get(_currentBranch));
     }
 
     /** Checks out all files tracked by given commit,
      * removes if not present, moves pointer to this commit node.
-     * Clears staging area.
+     * Clears staging area. Only files within the sparse-checkout patterns
+     * are written or removed.
      * @param commitId ID of commit to be reset. */
     public void reset(String commitId) {
-        List<String> workingDirectoryFiles = Utils.plainFilenamesIn
-                (System.getProperty("user.dir"));
+        Sparse sparse = Main.getSparse();
+        List<String> workingDirectoryFiles = sparse.workingFiles();
         Commit resetTo  = getCommit(commitId);
-        HashMap<String, Blob> resetTracked = new HashMap<>();
+        HashMap<String, String> resetTracked = new HashMap<>();
         for (String fileName: resetTo.getBlobs().keySet()) {
-            Blob blob = resetTo.getBlob(fileName);
+            String blob = resetTo.getBlobId(fileName);
             resetTracked.put(fileName, blob);
-            if (workingDirectoryFiles.contains(fileName)) {
-                Utils.join(System.getProperty("user.dir"), fileName).delete();
-                Utils.writeContents(Utils.join(System.getProperty("user.dir"),
-                        fileName), blob.getFileContentsString());
-            } else {
-                Utils.writeContents(Utils.join(System.getProperty("user.dir"),
-                        fileName), blob.getFileContentsString());
+            if (sparse.includes(fileName)) {
+                Blob.writeFile(blob, fileName);
             }
         }
         for (String fileName: workingDirectoryFiles) {
@@ -307,27 +667,36 @@ public class CommitTree implements Serializable {
                 Utils.join(System.getProperty("user.dir"), fileName).delete();
             }
         }
-        _branches.put(_currentBranch, resetTo);
-        _lastCommit = resetTo;
+        _branches.put(_currentBranch, commitId);
+        _lastCommit = commitId;
         Main.getStagingArea().setTracked(resetTracked);
         Main.getStagingArea().getAdded().clear();
         Main.getStagingArea().getRemoving().clear();
     }
 
-    /** HashMap of branch names to commit heads in those branches. */
-    private HashMap<String, Commit> _branches;
+    /** HashMap of branch names to IDs of the commit heads in those
+     * branches. */
+    private HashMap<String, String> _branches;
+
+    /** HashMap of remote names to the paths of their .gitlet
+     * directories. */
+    private HashMap<String, String> _remotes;
 
     /** String pointer to the name of the current branch. */
     private String _currentBranch;
 
-    /** Pointer to latest commit. */
-    private Commit _lastCommit;
+    /** ID of latest commit. */
+    private String _lastCommit;
+
+    /** Commits read from the object store during this command, mapping
+     * commit IDs to commit objects. */
+    private transient HashMap<String, Commit> _cache;
 
-    /** Hashmap of all commits, mapping commit IDs to commit objects. */
-    private HashMap<String, Commit> _allCommits;
+    /** Commit graph of all commits, or null if not yet opened. */
+    private transient CommitGraph _graph;
 
-    /** Hashmap of combined branch names to split points. */
-    private HashMap<String, Commit> _splitPoints;
+    /** Indexes of the commit graph, or null if not yet opened. */
+    private transient CommitIndex _index;
 
 }
 
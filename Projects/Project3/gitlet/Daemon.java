@@ -0,0 +1,207 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+
+/** A long-running server that keeps a Gitlet repository open in memory
+ *  and runs commands sent to it over the Unix domain socket
+ *  .gitlet/daemon.sock, started with "gitlet daemon" in the working
+ *  directory and stopped with "gitlet daemon stop".
+ *
+ *  Main sends each command to the daemon whenever the socket exists. A
+ *  request is the arguments of a command, each terminated by a NUL byte,
+ *  after which the client shuts down its side of the connection; the
+ *  reply is everything the command printed. The script scripts/gitlet
+ *  speaks this through socat, nc or python3, so that a command sent to
+ *  the daemon does not start a JVM at all.
+ *
+ *  After each successful command, the daemon records the size,
+ *  modification time and file key of each file of the repository's
+ *  metadata. The next command skips reading the repository if none of
+ *  them has changed since; otherwise, as when another process has changed
+ *  the repository, or after a command failed part way or ran gc, the
+ *  repository is read afresh. Commands are run one at a time.
+ *  @author Ayela Chughtai
+ */
+class Daemon {
+
+    /** Name of the socket, in the .gitlet directory. */
+    static final String SOCKET = "daemon.sock";
+
+    /** Files and directories in .gitlet whose changes make the
+     * repository in memory stale. */
+    static final String[] WATCHED = {
+        "CommitTree", "StagingArea", "journal", "commit-graph",
+        "commit-index", "index", Sparse.FILE_NAME, "objects/pack",
+    };
+
+    /** Sends the command ARGS to the daemon serving the repository in the
+     * current directory, if there is one, and prints its reply. Returns
+     * false, having done nothing, if no daemon accepts the command.
+     * @param args the command and its operands. */
+    static boolean forward(String[] args) {
+        File socket = Utils.join(".gitlet", SOCKET);
+        if (!socket.exists()) {
+            return false;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(
+                    UnixDomainSocketAddress.of(socket.toPath()));
+        } catch (IOException excp) {
+            return false;
+        }
+        try (channel) {
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            for (String arg : args) {
+                request.writeBytes(arg.getBytes(StandardCharsets.UTF_8));
+                request.write(0);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(request.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.shutdownOutput();
+            InputStream reply = Channels.newInputStream(channel);
+            reply.transferTo(System.out);
+            System.out.flush();
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Serves commands on the socket of the repository in the current
+     * directory until told to stop. */
+    @SuppressWarnings({"ResultOfMethodCallIgnored"})
+    static void serve() {
+        File socket = Utils.join(".gitlet", SOCKET);
+        if (socket.exists()) {
+            try (SocketChannel channel = SocketChannel.open(
+                    UnixDomainSocketAddress.of(socket.toPath()))) {
+                throw new GitletException("A daemon is already running.");
+            } catch (IOException excp) {
+                socket.delete();
+            }
+        }
+        try (ServerSocketChannel server = ServerSocketChannel.open(
+                StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket.toPath()));
+            System.out.println("Serving commands on " + socket + ".");
+            System.out.flush();
+            Daemon daemon = new Daemon();
+            boolean stop = false;
+            while (!stop) {
+                try (SocketChannel client = server.accept()) {
+                    String[] args = readRequest(client);
+                    byte[] reply;
+                    if (args.length == 2 && args[0].equals("daemon")
+                            && args[1].equals("stop")) {
+                        stop = true;
+                        reply = "Daemon stopped.\n".getBytes(
+                                StandardCharsets.UTF_8);
+                    } else {
+                        reply = daemon.execute(args);
+                    }
+                    ByteBuffer buffer = ByteBuffer.wrap(reply);
+                    while (buffer.hasRemaining()) {
+                        client.write(buffer);
+                    }
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            socket.delete();
+        }
+    }
+
+    /** Returns the arguments sent by CLIENT.
+     * @param client connection to a client. */
+    private static String[] readRequest(SocketChannel client)
+        throws IOException {
+        byte[] request = Channels.newInputStream(client).readAllBytes();
+        ArrayList<String> args = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < request.length; i += 1) {
+            if (request[i] == 0) {
+                args.add(new String(request, start, i - start,
+                        StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /** Runs the command ARGS and returns all it printed. The repository
+     * is read first only if it may have changed since the last command.
+     * @param args the command and its operands. */
+    private byte[] execute(String[] args) {
+        Main.setWarm(_state != null && _state.equals(state()));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true,
+                StandardCharsets.UTF_8);
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        System.setOut(out);
+        System.setErr(out);
+        boolean clean = false;
+        try {
+            Main.run(args);
+            clean = !args[0].equals("gc");
+        } catch (GitletException excp) {
+            out.println(excp.getMessage());
+        } catch (RuntimeException excp) {
+            excp.printStackTrace(out);
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+            Main.setWarm(false);
+        }
+        _state = clean ? state() : null;
+        return output.toByteArray();
+    }
+
+    /** Returns the size, modification time and file key of each of the
+     * WATCHED files, as a string. */
+    private static String state() {
+        StringBuilder result = new StringBuilder();
+        for (String name : WATCHED) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                        Utils.join(".gitlet", name).toPath(),
+                        BasicFileAttributes.class);
+                result.append(attrs.size()).append(' ')
+                    .append(attrs.lastModifiedTime().toInstant())
+                    .append(' ').append(attrs.fileKey());
+            } catch (NoSuchFileException excp) {
+                result.append('-');
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /** State of the WATCHED files after the last command, if it left the
+     * repository in memory current, or null. */
+    private String _state;
+
+}
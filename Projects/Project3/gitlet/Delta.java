@@ -0,0 +1,178 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Copy/insert delta encoding of one byte array against another, in the
+ *  style of xdelta. A delta starts with the lengths of the base and of the
+ *  target as varints, followed by instructions: a byte N in 1..127 inserts
+ *  the N literal bytes that follow it, and the byte 128 followed by two
+ *  varints OFFSET and LENGTH copies LENGTH bytes of the base starting at
+ *  OFFSET.
+ *  @author Ayela Chughtai
+ */
+class Delta {
+
+    /** Length of the blocks of the base that are indexed for matching. */
+    static final int BLOCK = 16;
+
+    /** Longest run of literal bytes in one insert instruction. */
+    private static final int MAX_INSERT = 127;
+
+    /** Instruction byte that starts a copy. */
+    private static final int COPY = 128;
+
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** Returns a delta that turns BASE into TARGET.
+     * @param base the earlier version.
+     * @param target the later version. */
+    static byte[] encode(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        int power = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            power *= PRIME;
+        }
+        int literals = 0, pos = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (pos + BLOCK <= target.length) {
+            Integer cand = blocks.get(h);
+            if (cand != null && matches(base, cand, target, pos)) {
+                int b = cand, t = pos;
+                while (b > 0 && t > literals && base[b - 1] == target[t - 1]) {
+                    b -= 1;
+                    t -= 1;
+                }
+                int len = pos - t + BLOCK;
+                while (b + len < base.length && t + len < target.length
+                        && base[b + len] == target[t + len]) {
+                    len += 1;
+                }
+                writeInserts(out, target, literals, t);
+                out.write(COPY);
+                writeVarint(out, b);
+                writeVarint(out, len);
+                pos = t + len;
+                literals = pos;
+                if (pos + BLOCK <= target.length) {
+                    h = hash(target, pos);
+                }
+            } else {
+                if (pos + BLOCK < target.length) {
+                    h = (h - (target[pos] & 0xff) * power) * PRIME
+                            + (target[pos + BLOCK] & 0xff);
+                }
+                pos += 1;
+            }
+        }
+        writeInserts(out, target, literals, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE.
+     * @param base the earlier version.
+     * @param delta delta produced by encode. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = new int[1];
+        if (readVarint(delta, pos) != base.length) {
+            throw Utils.error("Delta does not match its base.");
+        }
+        byte[] target = new byte[(int) readVarint(delta, pos)];
+        int t = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]] & 0xff;
+            pos[0] += 1;
+            if (op == COPY) {
+                int offset = (int) readVarint(delta, pos);
+                int len = (int) readVarint(delta, pos);
+                System.arraycopy(base, offset, target, t, len);
+                t += len;
+            } else {
+                System.arraycopy(delta, pos[0], target, t, op);
+                pos[0] += op;
+                t += op;
+            }
+        }
+        return target;
+    }
+
+    /** Returns the hash of the BLOCK bytes of DATA starting at START,
+     * consistent with the rolling update in encode.
+     * @param data bytes.
+     * @param start index of first byte. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = h * PRIME + (data[i] & 0xff);
+        }
+        return h;
+    }
+
+    /** Returns true if the BLOCK bytes of BASE at B equal those of TARGET
+     * at T.
+     * @param base bytes of base.
+     * @param b index into base.
+     * @param target bytes of target.
+     * @param t index into target. */
+    private static boolean matches(byte[] base, int b, byte[] target, int t) {
+        for (int i = 0; i < BLOCK; i += 1) {
+            if (base[b + i] != target[t + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Writes insert instructions for bytes FROM..TO-1 of TARGET to OUT.
+     * @param out delta being built.
+     * @param target bytes of target.
+     * @param from first index.
+     * @param to index past the last. */
+    private static void writeInserts(ByteArrayOutputStream out,
+                                     byte[] target, int from, int to) {
+        while (from < to) {
+            int len = Math.min(MAX_INSERT, to - from);
+            out.write(len);
+            out.write(target, from, len);
+            from += len;
+        }
+    }
+
+    /** Writes the non-negative VALUE to OUT, seven bits at a time, low
+     * bits first.
+     * @param out stream.
+     * @param value number to write. */
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while (value >= 0x80) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Returns the varint in DATA starting at POS[0], advancing POS[0]
+     * past it.
+     * @param data bytes.
+     * @param pos one-element array holding the position. */
+    static long readVarint(byte[] data, int[] pos) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            value |= (long) (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+}
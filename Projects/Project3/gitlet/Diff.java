@@ -0,0 +1,227 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line diffs for Gitlet. Files are split into lines, each keeping its
+ *  line terminator, and decoded as ISO-8859-1, which maps every byte to
+ *  one character, so joining the lines again gives back exactly the
+ *  original bytes whatever their encoding.
+ *
+ *  Lines are matched with Myers' O((N+M)D) algorithm, after stripping the
+ *  lines the two sides have in common at the start and end, so the time
+ *  taken grows with the number of lines that differ rather than with the
+ *  size of the files. Its linear-space version is used, which splits the
+ *  problem at the middle of a shortest edit script, so the space taken
+ *  grows only with the number of lines.
+ *  @author Ayela Chughtai
+ */
+class Diff {
+
+    /** Returns the lines of CONTENTS, each with its terminating newline,
+     * if any.
+     * @param contents bytes of a file. */
+    static List<String> lines(byte[] contents) {
+        ArrayList<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < contents.length; i += 1) {
+            if (contents[i] == '\n') {
+                lines.add(new String(contents, start, i + 1 - start,
+                        StandardCharsets.ISO_8859_1));
+                start = i + 1;
+            }
+        }
+        if (start < contents.length) {
+            lines.add(new String(contents, start, contents.length - start,
+                    StandardCharsets.ISO_8859_1));
+        }
+        return lines;
+    }
+
+    /** Returns the bytes of LINES joined together.
+     * @param lines lines, as returned by lines. */
+    static byte[] join(List<String> lines) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String line : lines) {
+            out.writeBytes(line.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns an array whose Ith entry is the index of the line of B
+     * matched with line I of A in a longest common subsequence of A and
+     * B, or -1 if line I of A is not in it.
+     * @param a lines of one file.
+     * @param b lines of the other. */
+    static int[] matches(List<String> a, List<String> b) {
+        HashMap<String, Integer> codes = new HashMap<>();
+        int[] x = encode(a, codes);
+        int[] y = encode(b, codes);
+        int[] result = new int[x.length];
+        Arrays.fill(result, -1);
+        int prefix = 0;
+        while (prefix < x.length && prefix < y.length
+                && x[prefix] == y[prefix]) {
+            result[prefix] = prefix;
+            prefix += 1;
+        }
+        int suffix = 0;
+        while (suffix < x.length - prefix && suffix < y.length - prefix
+                && x[x.length - 1 - suffix] == y[y.length - 1 - suffix]) {
+            result[x.length - 1 - suffix] = y.length - 1 - suffix;
+            suffix += 1;
+        }
+        myers(x, prefix, x.length - suffix, y, prefix, y.length - suffix,
+                result);
+        return result;
+    }
+
+    /** Records in RESULT the matches of a longest common subsequence of
+     * X[XLO..XHI) and Y[YLO..YHI), found with the linear-space version of
+     * Myers' algorithm: the lines the two have in common at the start and
+     * end are matched, the rest is split at a point on a shortest edit
+     * script, and the two parts are diffed in turn.
+     * @param x codes of the lines of one file.
+     * @param xlo first line of X compared.
+     * @param xhi end of the lines of X compared.
+     * @param y codes of the lines of the other.
+     * @param ylo first line of Y compared.
+     * @param yhi end of the lines of Y compared.
+     * @param result matches, indexed by line of X. */
+    private static void myers(int[] x, int xlo, int xhi, int[] y, int ylo,
+                              int yhi, int[] result) {
+        while (xlo < xhi && ylo < yhi && x[xlo] == y[ylo]) {
+            result[xlo] = ylo;
+            xlo += 1;
+            ylo += 1;
+        }
+        while (xlo < xhi && ylo < yhi && x[xhi - 1] == y[yhi - 1]) {
+            result[xhi - 1] = yhi - 1;
+            xhi -= 1;
+            yhi -= 1;
+        }
+        if (xlo == xhi || ylo == yhi) {
+            return;
+        }
+        long split = bisect(x, xlo, xhi, y, ylo, yhi);
+        if (split < 0) {
+            return;
+        }
+        int xmid = (int) (split >>> Integer.SIZE);
+        int ymid = (int) split;
+        myers(x, xlo, xmid, y, ylo, ymid, result);
+        myers(x, xmid, xhi, y, ymid, yhi, result);
+    }
+
+    /** Returns a point (XMID, YMID) through which a shortest edit script
+     * of X[XLO..XHI) into Y[YLO..YHI) passes, as XMID in the high half
+     * of the result and YMID in the low half, or -1 if the two have no
+     * line in common. Paths are followed forwards from the start and
+     * backwards from the end, each D differences at a time, until they
+     * meet, in space proportional to the number of lines.
+     * @param x codes of the lines of one file.
+     * @param xlo first line of X compared.
+     * @param xhi end of the lines of X compared.
+     * @param y codes of the lines of the other.
+     * @param ylo first line of Y compared.
+     * @param yhi end of the lines of Y compared. */
+    private static long bisect(int[] x, int xlo, int xhi, int[] y, int ylo,
+                               int yhi) {
+        int n = xhi - xlo;
+        int m = yhi - ylo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int[] forward = new int[2 * maxD + 2];
+        int[] backward = new int[2 * maxD + 2];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int kStart = 0;
+        int kEnd = 0;
+        int rStart = 0;
+        int rEnd = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k = -d + kStart; k <= d - kEnd; k += 2) {
+                int i;
+                if (k == -d || k != d
+                        && forward[offset + k - 1] < forward[offset + k + 1]) {
+                    i = forward[offset + k + 1];
+                } else {
+                    i = forward[offset + k - 1] + 1;
+                }
+                int j = i - k;
+                while (i < n && j < m && x[xlo + i] == y[ylo + j]) {
+                    i += 1;
+                    j += 1;
+                }
+                forward[offset + k] = i;
+                if (i > n) {
+                    kEnd += 2;
+                } else if (j > m) {
+                    kStart += 2;
+                } else if (odd) {
+                    int r = offset + delta - k;
+                    if (r >= 0 && r < backward.length && backward[r] != -1
+                            && i >= n - backward[r]) {
+                        return ((long) (xlo + i) << Integer.SIZE)
+                                | (ylo + j);
+                    }
+                }
+            }
+            for (int k = -d + rStart; k <= d - rEnd; k += 2) {
+                int i;
+                if (k == -d || k != d && backward[offset + k - 1]
+                        < backward[offset + k + 1]) {
+                    i = backward[offset + k + 1];
+                } else {
+                    i = backward[offset + k - 1] + 1;
+                }
+                int j = i - k;
+                while (i < n && j < m
+                        && x[xhi - 1 - i] == y[yhi - 1 - j]) {
+                    i += 1;
+                    j += 1;
+                }
+                backward[offset + k] = i;
+                if (i > n) {
+                    rEnd += 2;
+                } else if (j > m) {
+                    rStart += 2;
+                } else if (!odd) {
+                    int f = offset + delta - k;
+                    if (f >= 0 && f < forward.length && forward[f] != -1) {
+                        int fi = forward[f];
+                        int fj = offset + fi - f;
+                        if (fi >= n - i) {
+                            return ((long) (xlo + fi) << Integer.SIZE)
+                                    | (ylo + fj);
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the codes of LINES, giving equal lines equal codes, and
+     * recording new lines in CODES.
+     * @param lines lines of a file.
+     * @param codes map from lines to their codes. */
+    private static int[] encode(List<String> lines,
+                                HashMap<String, Integer> codes) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            Integer code = codes.putIfAbsent(lines.get(i), codes.size());
+            result[i] = code == null ? codes.size() - 1 : code;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Three-way line merge for Gitlet. The lines of the current and given
+ *  versions of a file are each matched against those of the version at
+ *  the split point. Lines matched in all three are stable; between them
+ *  lie chunks in which one or both sides made changes. A chunk changed on
+ *  only one side, or changed identically on both, takes that change; a
+ *  chunk changed differently on each side is a conflict, and both
+ *  versions of it are written between conflict markers.
+ *  @author Ayela Chughtai
+ */
+class Diff3 {
+
+    /** Marker opening a conflict, before the current version. */
+    static final String HEAD_MARKER = "<<<<<<< HEAD\n";
+
+    /** Marker between the current and given versions of a conflict. */
+    static final String SEPARATOR = "=======\n";
+
+    /** Marker closing a conflict, after the given version. */
+    static final String END_MARKER = ">>>>>>>\n";
+
+    /** Merges the changes made in OURS and THEIRS to BASE.
+     * @param base lines of the version at the split point.
+     * @param ours lines of the version in the current branch.
+     * @param theirs lines of the version in the given branch. */
+    Diff3(List<String> base, List<String> ours, List<String> theirs) {
+        _result = new ArrayList<>();
+        int[] toOurs = Diff.matches(base, ours);
+        int[] toTheirs = Diff.matches(base, theirs);
+        int o = 0;
+        int a = 0;
+        int b = 0;
+        while (true) {
+            int next = o;
+            while (next < base.size()
+                    && (toOurs[next] < 0 || toTheirs[next] < 0)) {
+                next += 1;
+            }
+            if (next == base.size()) {
+                chunk(base.subList(o, next), ours.subList(a, ours.size()),
+                        theirs.subList(b, theirs.size()));
+                break;
+            }
+            if (next == o && toOurs[o] == a && toTheirs[o] == b) {
+                _result.add(base.get(o));
+                o += 1;
+                a += 1;
+                b += 1;
+            } else {
+                chunk(base.subList(o, next), ours.subList(a, toOurs[next]),
+                        theirs.subList(b, toTheirs[next]));
+                o = next;
+                a = toOurs[next];
+                b = toTheirs[next];
+            }
+        }
+    }
+
+    /** Adds to the result the merge of a chunk in which BASE became OURS
+     * in the current branch and THEIRS in the given one.
+     * @param base lines of the chunk at the split point.
+     * @param ours lines of the chunk in the current branch.
+     * @param theirs lines of the chunk in the given branch. */
+    private void chunk(List<String> base, List<String> ours,
+                       List<String> theirs) {
+        if (ours.equals(base) || ours.equals(theirs)) {
+            _result.addAll(theirs);
+        } else if (theirs.equals(base)) {
+            _result.addAll(ours);
+        } else {
+            _conflicts += 1;
+            _result.add(HEAD_MARKER);
+            _result.addAll(ours);
+            _result.add(SEPARATOR);
+            _result.addAll(theirs);
+            _result.add(END_MARKER);
+        }
+    }
+
+    /** Returns the merged contents. */
+    byte[] getResult() {
+        return Diff.join(_result);
+    }
+
+    /** Returns the number of conflicting chunks. */
+    int getConflicts() {
+        return _conflicts;
+    }
+
+    /** Lines of the merged contents. */
+    private ArrayList<String> _result;
+
+    /** Number of conflicting chunks. */
+    private int _conflicts;
+
+}
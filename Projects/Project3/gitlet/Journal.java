@@ -0,0 +1,358 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/** Write-ahead journal of the metadata of a Gitlet repository: the
+ *  branches, the current branch and commit, the staging area, and the
+ *  remotes.
+ *
+ *  The commit tree and staging area are checkpointed in .gitlet/CommitTree
+ *  and .gitlet/StagingArea. Each command that changes them afterwards
+ *  appends one record to .gitlet/journal holding only the entries it
+ *  changed, so the cost of saving is proportional to the change. Opening
+ *  the repository reads the checkpoint and replays the journal over it.
+ *  Once the journal exceeds CHECKPOINT_BYTES, a new checkpoint is written
+ *  and the journal is emptied.
+ *
+ *  The journal starts with a header holding MAGIC and VERSION, which is
+ *  checked before any record is replayed. A record is framed by its
+ *  length and CRC-32, so one torn by a crash is recognized and dropped on
+ *  replay, leaving the repository as it was before that command. Checkpoint files are written to a temporary file
+ *  and renamed into place, and every change in a record sets an entry to
+ *  its final value, so replaying a record that a checkpoint already
+ *  includes does no harm.
+ *  @author Ayela Chughtai
+ */
+class Journal {
+
+    /** Size in bytes beyond which the journal is checkpointed. */
+    static final int CHECKPOINT_BYTES = 1 << 16;
+
+    /** Length of the header of a record: its length and CRC-32. */
+    private static final int FRAME_HEADER = 4 + 8;
+
+    /** First word of a journal file. */
+    private static final int MAGIC = 0x474a4e4c;
+
+    /** Version of the journal file format. */
+    private static final int VERSION = 1;
+
+    /** Length of the file header in bytes. */
+    private static final int HEADER = 8;
+
+    /** Constructor of the journal class.
+     * @param dir the .gitlet directory. */
+    Journal(File dir) {
+        _dir = dir;
+    }
+
+    /** Starts the journal of a new repository, checkpointing TREE and
+     * STAGE.
+     * @param tree commit tree.
+     * @param stage staging area. */
+    void create(CommitTree tree, StagingArea stage) {
+        _tree = tree;
+        _stage = stage;
+        checkpoint();
+    }
+
+    /** Reads the checkpoint and replays the journal over it, dropping
+     * any record torn by a crash. */
+    void open() {
+        _tree = Codec.read(Utils.join(_dir, "CommitTree"),
+                CommitTree.class);
+        _stage = Codec.read(Utils.join(_dir, "StagingArea"),
+                StagingArea.class);
+        List<HashMap<String, String>> maps = maps(_tree, _stage);
+        File journal = journalFile();
+        if (journal.isFile()) {
+            ByteBuffer records = ByteBuffer.wrap(
+                    Utils.readContents(journal));
+            int end = 0;
+            if (records.limit() >= HEADER) {
+                if (records.getInt() != MAGIC) {
+                    throw Utils.error("Bad journal %s.", journal);
+                }
+                if (records.getInt() > VERSION) {
+                    throw Utils.error("Journal %s was written by a newer "
+                            + "version of Gitlet.", journal);
+                }
+                end = HEADER;
+            }
+            while (true) {
+                byte[] record = nextRecord(records);
+                if (record == null) {
+                    break;
+                }
+                apply(record, maps);
+                end = records.position();
+            }
+            if (end < records.limit()) {
+                truncate(journal, end);
+            }
+            setHead(_tree, maps.get(1));
+        }
+        _snapshot = copy(maps);
+    }
+
+    /** Returns the commit tree. */
+    CommitTree getCommitTree() {
+        return _tree;
+    }
+
+    /** Returns the staging area. */
+    StagingArea getStagingArea() {
+        return _stage;
+    }
+
+    /** Appends a record of every change made to the commit tree and
+     * staging area since they were opened or last saved, checkpointing
+     * if the journal has grown too long. */
+    void save() {
+        List<HashMap<String, String>> maps = maps(_tree, _stage);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (int m = 0; m < maps.size(); m += 1) {
+                HashMap<String, String> now = maps.get(m);
+                HashMap<String, String> before = _snapshot.get(m);
+                for (Map.Entry<String, String> entry : now.entrySet()) {
+                    if (!entry.getValue().equals(
+                            before.get(entry.getKey()))) {
+                        writeChange(out, m, entry.getKey(),
+                                entry.getValue());
+                    }
+                }
+                for (String key : before.keySet()) {
+                    if (!now.containsKey(key)) {
+                        writeChange(out, m, key, null);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (bytes.size() == 0) {
+            return;
+        }
+        long length = append(bytes.toByteArray());
+        _snapshot = copy(maps);
+        if (length > CHECKPOINT_BYTES) {
+            checkpoint();
+        }
+    }
+
+    /** Writes the commit tree and staging area to new checkpoint files,
+     * renaming each into place, and then empties the journal. */
+    @SuppressWarnings({"ResultOfMethodCallIgnored"})
+    void checkpoint() {
+        replace(Utils.join(_dir, "CommitTree"), _tree);
+        replace(Utils.join(_dir, "StagingArea"), _stage);
+        journalFile().delete();
+        _snapshot = copy(maps(_tree, _stage));
+    }
+
+    /** Writes OBJ to a temporary file and atomically renames it to FILE.
+     * @param file destination.
+     * @param obj object to be written. */
+    private static void replace(File file, Object obj) {
+        File temp = new File(file.getPath() + ".tmp");
+        Codec.write(temp, obj);
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Appends a record holding PAYLOAD to the journal, forcing it to
+     * disk, and returns the new length of the journal. A new journal is
+     * started with its header, written along with the first record, so
+     * a header torn by a crash is dropped with it.
+     * @param payload changes in the record. */
+    private long append(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        try (FileChannel channel = FileChannel.open(journalFile().toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            int header = channel.size() < HEADER ? HEADER : 0;
+            if (header > 0) {
+                channel.truncate(0);
+            }
+            ByteBuffer record = ByteBuffer.allocate(header + FRAME_HEADER
+                    + payload.length);
+            if (header > 0) {
+                record.putInt(MAGIC).putInt(VERSION);
+            }
+            record.putInt(payload.length).putLong(crc.getValue())
+                .put(payload);
+            record.flip();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            channel.force(false);
+            Trace.add(Trace.BYTES_WRITTEN, record.limit());
+            return channel.size();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the payload of the next complete record in RECORDS,
+     * advancing past it, or null if there is none.
+     * @param records contents of the journal. */
+    private static byte[] nextRecord(ByteBuffer records) {
+        if (records.remaining() < FRAME_HEADER) {
+            return null;
+        }
+        int start = records.position();
+        int length = records.getInt();
+        long sum = records.getLong();
+        if (length < 0 || length > records.remaining()) {
+            records.position(start);
+            return null;
+        }
+        byte[] payload = new byte[length];
+        records.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if (crc.getValue() != sum) {
+            records.position(start);
+            return null;
+        }
+        return payload;
+    }
+
+    /** Applies the changes in the record PAYLOAD to MAPS.
+     * @param payload changes in a record.
+     * @param maps metadata maps, as returned by maps. */
+    private static void apply(byte[] payload,
+                              List<HashMap<String, String>> maps) {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(payload))) {
+            while (true) {
+                int m;
+                try {
+                    m = in.readUnsignedByte();
+                } catch (EOFException excp) {
+                    return;
+                }
+                String key = in.readUTF();
+                if (in.readBoolean()) {
+                    maps.get(m).put(key, in.readUTF());
+                } else {
+                    maps.get(m).remove(key);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes a change setting KEY to VALUE in map M, or removing KEY if
+     * VALUE is null, to OUT.
+     * @param out stream receiving the change.
+     * @param m index of the map in the list returned by maps.
+     * @param key key changed.
+     * @param value new value, or null. */
+    private static void writeChange(DataOutputStream out, int m,
+                                    String key, String value)
+        throws IOException {
+        out.writeByte(m);
+        out.writeUTF(key);
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /** Returns the maps making up the metadata of TREE and STAGE: the
+     * branches, a map holding the current branch and latest commit, the
+     * four maps of the staging area, and the remotes. All but the second
+     * are the live maps themselves.
+     * @param tree commit tree.
+     * @param stage staging area. */
+    private static List<HashMap<String, String>> maps(CommitTree tree,
+                                                      StagingArea stage) {
+        HashMap<String, String> head = new HashMap<>();
+        head.put("branch", tree.getCurrentBranch());
+        head.put("commit", tree.getLastCommitId());
+        ArrayList<HashMap<String, String>> maps = new ArrayList<>();
+        maps.add(tree.getBranches());
+        maps.add(head);
+        maps.add(stage.getAdded());
+        maps.add(stage.getRemoved());
+        maps.add(stage.getRemoving());
+        maps.add(stage.getTracked());
+        maps.add(tree.getRemotes());
+        return maps;
+    }
+
+    /** Sets the current branch and latest commit of TREE from HEAD.
+     * @param tree commit tree.
+     * @param head map holding the current branch and latest commit. */
+    private static void setHead(CommitTree tree,
+                                HashMap<String, String> head) {
+        tree.setCurrentBranch(head.get("branch"));
+        tree.setLastCommitId(head.get("commit"));
+    }
+
+    /** Returns a copy of each of MAPS.
+     * @param maps metadata maps. */
+    private static List<HashMap<String, String>> copy(
+            List<HashMap<String, String>> maps) {
+        ArrayList<HashMap<String, String>> copies = new ArrayList<>();
+        for (HashMap<String, String> map : maps) {
+            copies.add(new HashMap<>(map));
+        }
+        return copies;
+    }
+
+    /** Cuts FILE down to its first LENGTH bytes.
+     * @param file file to be truncated.
+     * @param length new length. */
+    private static void truncate(File file, long length) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the journal file. */
+    private File journalFile() {
+        return Utils.join(_dir, "journal");
+    }
+
+    /** The .gitlet directory. */
+    private File _dir;
+
+    /** Commit tree, as of the last record. */
+    private CommitTree _tree;
+
+    /** Staging area, as of the last record. */
+    private StagingArea _stage;
+
+    /** Copies of the metadata maps as of the last record. */
+    private List<HashMap<String, String>> _snapshot;
+
+}
@@ -2,8 +2,15 @@ package gitlet;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Ayela Chughtai
@@ -12,8 +19,24 @@ import java.util.List;
 public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> .... If a daemon is serving the repository, the
+     *  command is sent to it to run. */
     public static void main(String... args) {
+        args = Trace.start(args);
+        if (!Daemon.forward(args)) {
+            try {
+                run(args);
+            } catch (GitletException excp) {
+                System.out.println(excp.getMessage());
+            }
+        }
+        Trace.stop();
+    }
+
+    /** Runs the command given by ARGS, throwing a GitletException holding
+     * the message to be printed if it fails or stops early.
+     * @param args the command and its operands. */
+    static void run(String... args) {
         commandError(args);
         String command = args[0];
         switch (command) {
@@ -22,8 +45,8 @@ public class Main {
             init();
             break;
         case "add":
-            initError(); operandError(args, 2);
-            add(args[1]);
+            initError(); minOperandError(args, 2);
+            add(Arrays.copyOfRange(args, 1, args.length));
             break;
         case "commit" :
             initError(); operandError(args, 2);
@@ -34,8 +57,13 @@ public class Main {
             remove(args[1]);
             break;
         case "log" :
-            initError(); operandError(args, 1);
-            log();
+            initError();
+            if (args.length == 3 && args[1].equals("--")) {
+                log(args[2]);
+            } else {
+                operandError(args, 1);
+                log(null);
+            }
             break;
         case "global-log" :
             initError(); operandError(args, 1);
@@ -46,12 +74,21 @@ public class Main {
             find(args[1]);
             break;
         case "status" :
-            initError(); operandError(args, 1);
-            status();
+            initError();
+            if (args.length == 2 && args[1].equals("--renames")) {
+                status(true);
+            } else {
+                operandError(args, 1);
+                status(false);
+            }
             break;
         case "checkout" :
             checkOutError(args);
             break;
+        case "diff" :
+            initError();
+            diff(Arrays.copyOfRange(args, 1, args.length));
+            break;
         case "branch" :
             initError(); operandError(args, 2);
             branch(args[1]);
@@ -68,9 +105,51 @@ public class Main {
             initError(); operandError(args, 2);
             merge(args[1]);
             break;
+        case "sparse-checkout" :
+            initError(); minOperandError(args, 2);
+            sparseCheckout(args[1],
+                    Arrays.copyOfRange(args, 2, args.length));
+            break;
+        case "gc" :
+            initError();
+            if (args.length == 2 && args[1].startsWith("--prune=")) {
+                gc(args[1].substring("--prune=".length()));
+            } else {
+                operandError(args, 1);
+                gc(null);
+            }
+            break;
+        case "add-remote" :
+            initError(); operandError(args, 3);
+            addRemote(args[1], args[2]);
+            break;
+        case "rm-remote" :
+            initError(); operandError(args, 2);
+            removeRemote(args[1]);
+            break;
+        case "push" :
+            initError(); operandError(args, 3);
+            push(args[1], args[2]);
+            break;
+        case "fetch" :
+            initError(); operandError(args, 3);
+            fetch(args[1], args[2]);
+            break;
+        case "pull" :
+            initError(); operandError(args, 3);
+            fetch(args[1], args[2]);
+            merge(args[1] + "/" + args[2]);
+            break;
+        case "daemon" :
+            initError();
+            if (args.length == 2 && args[1].equals("stop")) {
+                throw new GitletException("No daemon is running.");
+            }
+            operandError(args, 1);
+            Daemon.serve();
+            break;
         default :
-            System.out.println("No command with that name exists.");
-            System.exit(0);
+            throw new GitletException("No command with that name exists.");
         }
     }
 
@@ -78,8 +157,7 @@ public class Main {
      * @param args String[] of args. */
     private static void commandError(String[] args) {
         if (args.length == 0) {
-            System.out.println("Please enter a command.");
-            System.exit(0);
+            throw new GitletException("Please enter a command.");
         }
     }
 
@@ -88,8 +166,16 @@ public class Main {
      * @param argLen Integer length that args need to be*/
     private static void operandError(String[] args, Integer argLen) {
         if (args.length != argLen) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException("Incorrect operands.");
+        }
+    }
+
+    /** Checks that there are at least the given number of operands.
+     * @param args String[] of args.
+     * @param argLen Integer length that args need to be at least. */
+    private static void minOperandError(String[] args, Integer argLen) {
+        if (args.length < argLen) {
+            throw new GitletException("Incorrect operands.");
         }
     }
 
@@ -97,8 +183,8 @@ public class Main {
     private static void initError() {
         if (!Utils.join(System.getProperty("user.dir"),
                         ".gitlet").exists()) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw new GitletException(
+                    "Not in an initialized Gitlet directory.");
         }
     }
 
@@ -107,19 +193,16 @@ public class Main {
     private static void checkOutError(String[] args) {
         initError();
         if (args.length > 4 || args.length < 2) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException("Incorrect operands.");
         } else if (args.length == 3) {
             if (!args[1].equals("--")) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw new GitletException("Incorrect operands.");
             } else {
                 checkout(args[2]);
             }
         } else if (args.length == 4) {
             if (!args[2].equals("--")) {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw new GitletException("Incorrect operands.");
             } else {
                 checkout(args[1], args[3]);
             }
@@ -130,58 +213,50 @@ public class Main {
 
     /** Reverts cwd to head commit.
      * @param fileName name of file. */
-    @SuppressWarnings({"ResultOfMethodCallIgnored"})
     private static void checkout(String fileName) {
         readFiles();
         if (fileName == null) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException("Incorrect operands.");
         }
         if (!_commitTree.getLastCommit().getBlobs().containsKey(fileName)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            throw new GitletException("File does not exist in that commit.");
         } else {
-            Utils.join(System.getProperty("user.dir"), fileName).delete();
-            Blob blob = _commitTree.getLatestFiles(fileName);
-            Utils.writeContents(Utils.join(System.getProperty("user.dir"),
-                    fileName), blob.getFileContentsString());
+            String blob = _commitTree.getLatestFiles(fileName);
+            Blob.writeFile(blob, fileName);
         }
     }
 
-    /** Reverts wd to commit at the head of the given branch.
+    /** Reverts wd to commit at the head of the given branch. Only files
+     * within the sparse-checkout patterns are written or removed.
      * @param branchName name of branch. */
     @SuppressWarnings({"ResultOfMethodCallIgnored"})
     private static void checkoutBranch(String branchName) {
         readFiles();
         if (branchName == null) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException("Incorrect operands.");
         }
         if (!_commitTree.getBranches().containsKey(branchName)) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
+            throw new GitletException("No such branch exists.");
         }
         if (_commitTree.getCurrentBranch().equals(branchName)) {
-            System.out.println("No need to checkout the current branch.");
-            System.exit(0);
+            throw new GitletException(
+                    "No need to checkout the current branch.");
         }
         if (_stagingArea.statusUntracked().size() > 0) {
-            System.out.println("There is an untracked file in the way;"
+            throw new GitletException("There is an untracked file in the way;"
                     + " delete it, or add and commit it first.");
-            System.exit(0);
         }
-        HashMap<String, Blob> tracked = new HashMap<>();
+        HashMap<String, String> tracked = new HashMap<>();
         Commit branchHead = _commitTree.getBranchHead(branchName);
         for (String fileName : branchHead.getBlobs().keySet()) {
-            Utils.join(System.getProperty("user.dir"), fileName).delete();
-            Blob blob = branchHead.getBlob(fileName);
-            Utils.writeContents(Utils.join(System.getProperty("user.dir"),
-                    fileName), blob.getFileContentsString());
-            tracked.put(fileName, branchHead.getBlob(fileName));
+            String blob = branchHead.getBlobId(fileName);
+            if (getSparse().includes(fileName)) {
+                Blob.writeFile(blob, fileName);
+            }
+            tracked.put(fileName, blob);
         }
 
-        List<String> workingDirectoryFiles = Utils.plainFilenamesIn
-                (System.getProperty("user.dir"));
+        List<String> workingDirectoryFiles = getSparse().workingFiles();
         for (String fileName : workingDirectoryFiles) {
             if (!branchHead.getBlobs().containsKey(fileName)) {
                 Utils.join(System.getProperty("user.dir"),
@@ -199,34 +274,21 @@ public class Main {
     /** Overwrites file in wd to given commit.
      * @param commitId ID of commit.
      * @param fileName name of file to overwrite. */
-    @SuppressWarnings({"ResultOfMethodCallIgnored"})
     private static void checkout(String commitId, String fileName) {
         readFiles();
         if (commitId == null || fileName == null || commitId.length() < 6) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
-        }
-        boolean contains = false;
-        String fullId = null;
-        for (String commitIds: _commitTree.getAllCommits().keySet()) {
-            if (commitIds.contains(commitId)) {
-                contains = true;
-                fullId = commitIds;
-            }
+            throw new GitletException("Incorrect operands.");
         }
-        if (!contains) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+        String fullId = _commitTree.findCommitId(commitId);
+        if (fullId == null) {
+            throw new GitletException("No commit with that id exists.");
         } else if (!_commitTree.getCommit(
                 fullId).getBlobs().containsKey(fileName)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            throw new GitletException("File does not exist in that commit.");
         } else {
-            Utils.join(System.getProperty("user.dir"), fileName).delete();
-            Blob blob = _commitTree.getCommit(
-                    fullId).getBlob(fileName);
-            Utils.writeContents(Utils.join(System.getProperty("user.dir"),
-                    fileName), blob.getFileContentsString());
+            String blob = _commitTree.getCommit(
+                    fullId).getBlobId(fileName);
+            Blob.writeFile(blob, fileName);
         }
     }
 
@@ -235,43 +297,37 @@ public class Main {
     private static void merge(String branchName) {
         readFiles();
         String currentBranch = _commitTree.getCurrentBranch();
-        Commit splitPoint = _commitTree.getSplitPoints().get(
-                branchName + currentBranch);
         Commit currHead = _commitTree.getBranchHead(currentBranch);
         Commit branchHead = _commitTree.getBranchHead(branchName);
         if (branchName == null) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException("Incorrect operands.");
         }
         if (branchName.equals(currentBranch)) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw new GitletException("Cannot merge a branch with itself.");
         }
         if (!_commitTree.getBranches().containsKey(branchName)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            throw new GitletException(
+                    "A branch with that name does not exist.");
         }
         if (_stagingArea.statusUntracked().size() > 0) {
-            System.out.println("There is an untracked file in the way;"
+            throw new GitletException("There is an untracked file in the way;"
                     + " delete it or add and commit it first");
-            System.exit(0);
         }
         if (!_stagingArea.getAdded().isEmpty()
                 || !_stagingArea.getRemoving().isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            throw new GitletException("You have uncommitted changes.");
         }
+        Commit splitPoint = _commitTree.findSplitPoint(currHead, branchHead);
         if (splitPoint.equals(branchHead)) {
-            System.out.println("Given branch is an ancestor of the "
+            throw new GitletException("Given branch is an ancestor of the "
                     + "current branch.");
-            System.exit(0);
         }
         if (splitPoint.equals(currHead)) {
-            checkout(branchName);
-            System.out.println("Current branch fast-forwarded.");
-            System.exit(0);
+            _commitTree.reset(branchHead.getCommitId());
+            writeFiles();
+            throw new GitletException("Current branch fast-forwarded.");
         }
-        _commitTree.merge(branchName);
+        _commitTree.merge(branchName, splitPoint);
         mergeCommit("Merged " + branchName + " into " + currentBranch + ".",
                 currHead, branchHead);
         writeFiles();
@@ -285,16 +341,13 @@ public class Main {
     private static void mergeCommit(String logMessage, Commit currHead,
                                     Commit branchHead) {
         if (logMessage == null) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException("Incorrect operands.");
         }
         if (logMessage.equals("")) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
+            throw new GitletException("Please enter a commit message.");
         } else if (_stagingArea.getAdded().size() == 0
                 && _stagingArea.getRemoving().size() == 0) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw new GitletException("No changes added to the commit.");
         }
         _commitTree.mergeCommit(logMessage, _stagingArea.getAdded(),
                 _stagingArea.getRemoving(), currHead, branchHead);
@@ -309,25 +362,14 @@ public class Main {
     private static void reset(String commitId) {
         readFiles();
         if (commitId == null) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
-        }
-        boolean contains = false;
-        String fullId = null;
-        for (String commitIds: _commitTree.getAllCommits().keySet()) {
-            if (commitIds.contains(commitId)) {
-                contains = true;
-                fullId = commitIds;
-                break;
-            }
+            throw new GitletException("Incorrect operands.");
         }
-        if (!contains) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+        String fullId = _commitTree.findCommitId(commitId);
+        if (fullId == null) {
+            throw new GitletException("No commit with that id exists.");
         } else if (_stagingArea.statusUntracked().size() > 0) {
-            System.out.println("There is an untracked file in the way;"
+            throw new GitletException("There is an untracked file in the way;"
                     + " delete it or add and commit it first");
-            System.exit(0);
         }
         _commitTree.reset(fullId);
         writeFiles();
@@ -338,16 +380,14 @@ public class Main {
     private static void removeBranch(String branchName) {
         readFiles();
         if (branchName == null) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException("Incorrect operands.");
         }
         if (!_commitTree.getBranches().containsKey(branchName)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            throw new GitletException(
+                    "A branch with that name does not exist.");
         }
         if (branchName.equals(_commitTree.getCurrentBranch())) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+            throw new GitletException("Cannot remove the current branch.");
         }
         _commitTree.getBranches().remove(branchName);
         writeFiles();
@@ -359,51 +399,297 @@ public class Main {
     private static void branch(String branchName) {
         readFiles();
         if (branchName == null) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException("Incorrect operands.");
         }
         if (_commitTree.getBranches().containsKey(branchName)) {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
+            throw new GitletException(
+                    "A branch with that name already exists.");
         }
         _commitTree.branch(branchName);
         writeFiles();
     }
 
+    /** Saves the given login information under the given remote name.
+     * @param remoteName name of the remote.
+     * @param path path of the .gitlet directory of the remote, with "/"
+     *             separating directories. */
+    private static void addRemote(String remoteName, String path) {
+        readFiles();
+        if (_commitTree.getRemotes().containsKey(remoteName)) {
+            throw new GitletException(
+                    "A remote with that name already exists.");
+        }
+        _commitTree.getRemotes().put(remoteName,
+                path.replace("/", File.separator));
+        writeFiles();
+    }
+
+    /** Removes information associated with the given remote name.
+     * @param remoteName name of the remote. */
+    private static void removeRemote(String remoteName) {
+        readFiles();
+        if (!_commitTree.getRemotes().containsKey(remoteName)) {
+            throw new GitletException(
+                    "A remote with that name does not exist.");
+        }
+        _commitTree.getRemotes().remove(remoteName);
+        writeFiles();
+    }
+
+    /** Appends the commits of the current branch that the given branch of
+     * the remote lacks to it, and moves it to the current head. Only the
+     * commits, trees and blobs the remote is missing are copied, as a
+     * single pack.
+     * @param remoteName name of the remote.
+     * @param branchName name of the branch of the remote. */
+    private static void push(String remoteName, String branchName) {
+        readFiles();
+        Remote remote = openRemote(remoteName);
+        CommitTree remoteTree = remote.getJournal().getCommitTree();
+        String head = _commitTree.getLastCommitId();
+        String remoteHead = remoteTree.getBranches().get(branchName);
+        if (remoteHead != null) {
+            CommitIndex index = _commitTree.getIndex();
+            int i = index.findPrefix(remoteHead);
+            if (i < 0 || !_commitTree.getGraph().isAncestor(i,
+                    index.findPrefix(head))) {
+                throw new GitletException(
+                        "Please pull down remote changes before pushing.");
+            }
+        }
+        Remote.transfer(head, _objectStore, _commitTree.getGraph(),
+                _commitTree.getIndex(), remote.getObjectStore(),
+                remote.getGraph(), remote.getIndex());
+        remoteTree.getBranches().put(branchName, head);
+        if (branchName.equals(remoteTree.getCurrentBranch())) {
+            remoteTree.setLastCommitId(head);
+        }
+        remote.getJournal().save();
+    }
+
+    /** Copies the commits of the given branch of the remote that this
+     * repository lacks into it, as the branch REMOTENAME/BRANCHNAME.
+     * Only the commits, trees and blobs missing here are copied, as a
+     * single pack.
+     * @param remoteName name of the remote.
+     * @param branchName name of the branch of the remote. */
+    private static void fetch(String remoteName, String branchName) {
+        readFiles();
+        Remote remote = openRemote(remoteName);
+        String remoteHead = remote.getJournal().getCommitTree()
+                .getBranches().get(branchName);
+        if (remoteHead == null) {
+            throw new GitletException("That remote does not have that branch.");
+        }
+        Remote.transfer(remoteHead, remote.getObjectStore(),
+                remote.getGraph(), remote.getIndex(), _objectStore,
+                _commitTree.getGraph(), _commitTree.getIndex());
+        _commitTree.getBranches().put(remoteName + "/" + branchName,
+                remoteHead);
+        writeFiles();
+    }
+
+    /** Returns the remote with the given name, exiting if it does not
+     * exist.
+     * @param remoteName name of the remote. */
+    private static Remote openRemote(String remoteName) {
+        String path = _commitTree.getRemotes().get(remoteName);
+        Remote remote = path == null ? null : new Remote(new File(path));
+        if (remote == null || !remote.exists()) {
+            throw new GitletException("Remote directory not found.");
+        }
+        return remote;
+    }
+
+    /** Lists, sets or disables the sparse-checkout patterns. Setting or
+     * disabling them updates the working directory: files of the current
+     * commit that come within the patterns are written, and files that
+     * fall outside them are deleted, unless they are staged or have been
+     * modified.
+     * @param action "list", "set" or "disable".
+     * @param patterns glob patterns to set. */
+    @SuppressWarnings({"ResultOfMethodCallIgnored"})
+    private static void sparseCheckout(String action, String... patterns) {
+        readFiles();
+        File file = Utils.join(".gitlet", Sparse.FILE_NAME);
+        if (action.equals("list") && patterns.length == 0) {
+            for (String pattern : getSparse().getPatterns()) {
+                System.out.println(pattern);
+            }
+            return;
+        } else if (!(action.equals("set") && patterns.length > 0)
+                && !(action.equals("disable") && patterns.length == 0)) {
+            throw new GitletException("Incorrect operands.");
+        }
+        Sparse before = getSparse();
+        _sparse = new Sparse(Arrays.asList(patterns));
+        Commit head = _commitTree.getLastCommit();
+        for (Map.Entry<String, String> entry : head.getBlobs().entrySet()) {
+            String fileName = entry.getKey();
+            if (_stagingArea.getAdded().containsKey(fileName)
+                    || _stagingArea.getRemoving().containsKey(fileName)) {
+                continue;
+            }
+            boolean was = before.includes(fileName);
+            boolean now = _sparse.includes(fileName);
+            File working = new File(fileName);
+            if (now && !was) {
+                Blob.writeFile(entry.getValue(), fileName);
+            } else if (was && !now && working.isFile()
+                    && entry.getValue().equals(
+                            getStatCache().blobId(fileName))) {
+                working.delete();
+            }
+        }
+        _sparse.write(file);
+        writeFiles();
+    }
+
+    /** Deletes objects that cannot be reached from any branch, unless
+     * they were stored within the grace period, and packs the rest into a
+     * single compressed packfile, storing each version of a file as a
+     * delta against its previous version where that is smaller.
+     * @param prune grace period in days, "now" for none, or null for
+     *              the default of GC_GRACE_DAYS. */
+    private static void gc(String prune) {
+        readFiles();
+        double days = GC_GRACE_DAYS;
+        if (prune != null) {
+            try {
+                days = prune.equals("now") ? 0 : Double.parseDouble(prune);
+            } catch (NumberFormatException excp) {
+                days = -1;
+            }
+            if (!(days >= 0)) {
+                throw new GitletException("Incorrect operands.");
+            }
+        }
+        _commitTree.collectGarbage(System.currentTimeMillis()
+                - (long) (days * TimeUnit.DAYS.toMillis(1)));
+    }
+
     /** Displays what branches exist, files staged for addition/removal,
-     * modifications not staged for commit [EC], and untracked files [EC]. */
-    private static void status() {
+     * modifications not staged for commit [EC], and untracked files [EC].
+     * @param renames true if staged files renamed or copied from others
+     *                are to be marked as such. */
+    private static void status(boolean renames) {
         readFiles();
-        _stagingArea.status();
+        _stagingArea.status(renames);
+        getStatCache().write(
+                Utils.join(System.getProperty("user.dir"), ".gitlet", "index"));
+    }
+
+    /** Writes to standard output the differences, as a unified diff,
+     * between two versions of the files, given by OPERANDS: [commit
+     * [commit]] [-- file name]. Each commit may be named by a branch or
+     * by an ID or its prefix. With two commits, their trees are compared
+     * node by node, so files in unchanged subtrees are never looked at;
+     * with one, or none for the current commit, it is compared with the
+     * files in the working directory that it or the current commit
+     * tracks or that are staged, whose blob IDs come from the stat
+     * cache. Only files whose blob IDs differ are read and diffed.
+     * @param operands the commits and file name. */
+    private static void diff(String... operands) {
+        List<String> list = Arrays.asList(operands);
+        int dash = list.indexOf("--");
+        List<String> commits = dash < 0 ? list : list.subList(0, dash);
+        if (commits.size() > 2 || dash >= 0 && dash != list.size() - 2) {
+            throw new GitletException("Incorrect operands.");
+        }
+        String fileName = dash < 0 ? null : list.get(dash + 1);
+        readFiles();
+        Commit from = commits.isEmpty() ? _commitTree.getLastCommit()
+                : resolve(commits.get(0));
+        Commit to = commits.size() < 2 ? null : resolve(commits.get(1));
+        TreeMap<String, String> before = new TreeMap<>();
+        TreeMap<String, String> after = new TreeMap<>();
+        if (to != null) {
+            TreeSet<String> changed = new TreeSet<>();
+            Tree.diff(from.getTreeId(), to.getTreeId(), changed);
+            for (String name : changed) {
+                if (fileName == null || fileName.equals(name)) {
+                    before.put(name, from.getBlobId(name));
+                    after.put(name, to.getBlobId(name));
+                }
+            }
+        } else {
+            TreeSet<String> names = new TreeSet<>(from.getBlobs().keySet());
+            names.addAll(_commitTree.getLastCommit().getBlobs().keySet());
+            names.addAll(_stagingArea.getAdded().keySet());
+            if (fileName != null) {
+                names.retainAll(Collections.singleton(fileName));
+            }
+            ArrayList<String> present = new ArrayList<>();
+            for (String name : names) {
+                if (getSparse().includes(name)
+                        && Utils.join(System.getProperty("user.dir"),
+                                      name).isFile()) {
+                    present.add(name);
+                }
+            }
+            TreeMap<String, String> working =
+                    getStatCache().blobIds(present);
+            for (String name : names) {
+                String blobId = from.getBlobId(name);
+                if (getSparse().includes(name)
+                        && !Objects.equals(blobId, working.get(name))) {
+                    before.put(name, blobId);
+                    after.put(name, working.get(name));
+                }
+            }
+        }
+        Patch patch = new Patch(System.out);
+        for (String name : before.keySet()) {
+            String beforeId = before.get(name);
+            String afterId = after.get(name);
+            byte[] afterContents = afterId == null ? null : to != null
+                    ? Blob.readContents(afterId)
+                    : Utils.readContents(Utils.join(
+                            System.getProperty("user.dir"), name));
+            patch.file(name, beforeId, beforeId == null ? null
+                    : Blob.readContents(beforeId), afterId, afterContents);
+        }
+        patch.flush();
+        if (to == null) {
+            getStatCache().write(Utils.join(System.getProperty("user.dir"),
+                    ".gitlet", "index"));
+        }
+    }
+
+    /** Returns the commit named NAME: the head of the branch NAME if
+     * there is one, and otherwise the commit whose ID starts with NAME.
+     * @param name a branch name or commit ID. */
+    private static Commit resolve(String name) {
+        if (_commitTree.getBranches().containsKey(name)) {
+            return _commitTree.getBranchHead(name);
+        }
+        String commitId = _commitTree.findCommitId(name);
+        if (commitId == null) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        return _commitTree.getCommit(commitId);
     }
 
     /** Prints commitIds of all commits with that message.
      * @param logMessage string of message for commits to be found. */
-    @SuppressWarnings({"rawtypes", "unchecked"})
     private static void find(String logMessage) {
         readFiles();
         if (logMessage == null) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
-        }
-        ArrayList commitIds = new ArrayList();
-        for (String commitId: _commitTree.getAllCommits().keySet()) {
-            if (_commitTree.getCommit(commitId).getLogMessage().equals(
-                    logMessage)) {
-                commitIds.add(commitId);
-                System.out.println(commitId);
-            }
+            throw new GitletException("Incorrect operands.");
+        }
+        List<String> commitIds = _commitTree.findCommitIds(logMessage);
+        for (String commitId : commitIds) {
+            System.out.println(commitId);
         }
         if (commitIds.isEmpty()) {
-            System.out.println("Found no commit with that message.");
-            System.exit(0);
+            throw new GitletException("Found no commit with that message.");
         }
     }
 
     /** Displays info for all commits ever made in random order. */
     private static void globalLog() {
         readFiles();
-        for (String commitId: _commitTree.getAllCommits().keySet()) {
+        for (String commitId: _commitTree.getAllCommitIds()) {
             Commit lastCommit = _commitTree.getCommit(commitId);
             System.out.println("===" + "\n" + "commit "
                     + lastCommit.getCommitId());
@@ -412,33 +698,59 @@ public class Main {
         }
     }
 
-    /** Displays commits from head to initial ignoring second parents. */
-    private static void log() {
+    /** Displays commits from head to initial ignoring second parents.
+     * The history is walked in the commit graph, so only the commits
+     * displayed are read from the object store. If FILENAME is not null,
+     * only commits that changed that file are displayed; the Bloom
+     * filters in the graph rule out most of the others unread.
+     * @param fileName name of a file, or null. */
+    private static void log(String fileName) {
         readFiles();
-        Commit lastCommit = _commitTree.getLastCommit();
-        while (!lastCommit.getLogMessage().equals("initial commit")) {
-            if (lastCommit.getLogMessage().contains("Merged")) {
-                System.out.println("===" + "\n" + "commit "
-                        + lastCommit.getCommitId());
-                String[] parentsIds = lastCommit.getParentId().split(" ");
-                System.out.println("Merge: " + parentsIds[0].substring(0, 6)
-                        + " " + parentsIds[1].substring(0, 6));
-                System.out.println("Date: " + lastCommit.getDateTime());
-                System.out.println(lastCommit.getLogMessage() + "\n");
-                lastCommit = _commitTree.getAllCommits().get(parentsIds[0]);
-            } else {
-                System.out.println("===" + "\n" + "commit "
-                        + lastCommit.getCommitId());
-                System.out.println("Date: " + lastCommit.getDateTime());
-                System.out.println(lastCommit.getLogMessage() + "\n");
-                lastCommit = _commitTree.getAllCommits().get(
-                        lastCommit.getParentId());
+        CommitGraph graph = _commitTree.getGraph();
+        boolean first = true;
+        for (int i = _commitTree.getIndex().findPrefix(
+                 _commitTree.getLastCommitId());
+             i >= 0; i = graph.firstParent(i)) {
+            if (fileName != null && !changes(graph, i, fileName)) {
+                continue;
+            }
+            Commit commit = _commitTree.getCommit(graph.idAt(i));
+            if (!first) {
+                System.out.println();
             }
+            first = false;
+            System.out.println("===" + "\n" + "commit "
+                    + commit.getCommitId());
+            if (graph.secondParent(i) >= 0) {
+                System.out.println("Merge: "
+                        + graph.idAt(graph.firstParent(i)).substring(0, 7)
+                        + " "
+                        + graph.idAt(graph.secondParent(i)).substring(0, 7));
+            }
+            System.out.println("Date: " + commit.getDateTime());
+            System.out.println(commit.getLogMessage());
         }
-        System.out.println("===" + "\n" + "commit "
-                + lastCommit.getCommitId());
-        System.out.println("Date: " + lastCommit.getDateTime());
-        System.out.println(lastCommit.getLogMessage());
+    }
+
+    /** Returns true if the commit in record I of GRAPH changed the file
+     * FILENAME relative to its first parent.
+     * @param graph commit graph.
+     * @param i record number.
+     * @param fileName name of the file. */
+    private static boolean changes(CommitGraph graph, int i,
+                                   String fileName) {
+        if (!graph.mayHaveChanged(i, fileName)) {
+            return false;
+        }
+        String blobId = _commitTree.getCommit(graph.idAt(i))
+                .getBlobId(fileName);
+        int parent = graph.firstParent(i);
+        if (parent < 0) {
+            return blobId != null;
+        }
+        String before = _commitTree.getCommit(graph.idAt(parent))
+                .getBlobId(fileName);
+        return blobId == null ? before != null : !blobId.equals(before);
     }
 
     /** Unstage a file staged for commit. If the file is tracked
@@ -448,23 +760,21 @@ public class Main {
     private static void remove(String fileName) {
         readFiles();
         if (fileName == null) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException("Incorrect operands.");
         }
         if (!_stagingArea.getAdded().containsKey(fileName)
                 && (!_commitTree.getLastCommit().getBlobs().containsKey(
                         fileName)
                 || !_stagingArea.getTracked().containsKey(fileName))) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+            throw new GitletException("No reason to remove the file.");
         }
         File file = new File(System.getProperty("user.dir"), fileName);
         if (file.exists()) {
-            Blob toRemoveBlob = new Blob(fileName);
+            String toRemoveBlob = getStatCache().blobId(fileName);
             _stagingArea.remove(fileName, toRemoveBlob);
         } else if (_commitTree.getLastCommit().getBlobs().containsKey(
                 fileName)) {
-            Blob toRemoveBlob = _commitTree.getLatestFiles(fileName);
+            String toRemoveBlob = _commitTree.getLatestFiles(fileName);
             _stagingArea.getRemoving().put(fileName, toRemoveBlob);
         }
         writeFiles();
@@ -476,56 +786,62 @@ public class Main {
     private static void commit(String logMessage) {
         readFiles();
         if (logMessage == null) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException("Incorrect operands.");
         }
         if (logMessage.equals("")) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
+            throw new GitletException("Please enter a commit message.");
         } else if (_stagingArea.getAdded().size() == 0
                 && _stagingArea.getRemoving().size() == 0) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw new GitletException("No changes added to the commit.");
         }
         _commitTree.commit(logMessage, _stagingArea.getAdded(),
                 _stagingArea.getRemoving());
         writeFiles();
     }
 
-    /** Adds copy of file to staging area, overwriting previously staged files.
-     * @param fileName string of name of file to be added. */
-    private static void add(String fileName) {
+    /** Adds copies of files to staging area, overwriting previously staged
+     * files. The files are hashed and stored in parallel.
+     * @param fileNames names of files to be added. */
+    private static void add(String... fileNames) {
         readFiles();
-        if (fileName == null) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+        for (String fileName : fileNames) {
+            File toAdd = new File(fileName);
+            if (!toAdd.exists()) {
+                throw new GitletException("File does not exist.");
+            }
         }
-        File toAdd = new File(fileName);
-        if (!toAdd.exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+        TreeMap<String, String> ids = getStatCache().store(
+                Arrays.asList(fileNames));
+        if (!ids.keySet().containsAll(Arrays.asList(fileNames))) {
+            throw new GitletException("File does not exist.");
         }
-        Blob toAddBlob = new Blob(fileName);
+        for (String fileName : fileNames) {
+            stage(fileName, ids.get(fileName));
+        }
+        writeFiles();
+    }
+
+    /** Stages a file for addition, overwriting previously staged files.
+     * @param fileName string of name of file to be added.
+     * @param toAddId ID of the blob of its current contents. */
+    private static void stage(String fileName, String toAddId) {
         if (_stagingArea.getRemoving().containsKey(fileName)) {
             _stagingArea.getRemoving().remove(fileName);
-            if (!toAddBlob.getBlobId().equals(
-                    _commitTree.getLatestFiles(fileName).getBlobId())) {
-                _stagingArea.getAdded().put(fileName, toAddBlob);
+            if (!toAddId.equals(_commitTree.getLatestFiles(fileName))) {
+                _stagingArea.getAdded().put(fileName, toAddId);
             }
         } else if (_commitTree.getLastCommit() != null
                 && _commitTree.getLatestFiles(fileName) != null) {
-            if (!_commitTree.getLatestFiles(
-                    fileName).getBlobId().equals(toAddBlob.getBlobId())) {
-                _stagingArea.add(fileName, toAddBlob);
+            if (!_commitTree.getLatestFiles(fileName).equals(toAddId)) {
+                _stagingArea.add(fileName, toAddId);
             } else {
                 if (_stagingArea.getAdded().containsKey(fileName)) {
                     _stagingArea.getAdded().remove(fileName);
                 }
             }
         } else {
-            _stagingArea.add(fileName, toAddBlob);
+            _stagingArea.add(fileName, toAddId);
         }
-        writeFiles();
     }
 
     /** Initialises gitlet and creates a new version control system in
@@ -533,32 +849,54 @@ public class Main {
     private static void init() {
         File gitlet = Utils.join(System.getProperty("user.dir"), ".gitlet");
         if (gitlet.exists()) {
-            System.out.println("Gitlet version-control system already "
+            throw new GitletException("Gitlet version-control system already "
                     + "exists in the current directory.");
-            System.exit(0);
         }
         gitlet.mkdir();
+        _objectStore = new ObjectStore(Utils.join(gitlet, "objects"));
         _commitTree = new CommitTree();
         _stagingArea = new StagingArea();
-        Utils.writeObject(Utils.join(gitlet, "/CommitTree"), _commitTree);
-        Utils.writeObject(Utils.join(gitlet, "/StagingArea"), _stagingArea);
+        _journal = new Journal(gitlet);
+        _journal.create(_commitTree, _stagingArea);
     }
 
-    /** Read the staging area and commit tree objects. */
-    private static void readFiles() {
-        File ct = new File(".gitlet/CommitTree");
-        File sa = new File(".gitlet/StagingArea");
-        _commitTree = Utils.readObject(ct, CommitTree.class);
-        _stagingArea = Utils.readObject(sa, StagingArea.class);
+    /** Read the staging area and commit tree objects. Commits and blobs
+     * are not read here; they are loaded from the object store when a
+     * command needs them. Package-private so that the benchmarks can time
+     * opening a repository on its own. While warm, the repository is
+     * already open and nothing is read. */
+    static void readFiles() {
+        try (Trace.Span span = Trace.span("readFiles")) {
+            if (_warm && _journal != null) {
+                return;
+            }
+            _objectStore = new ObjectStore(new File(".gitlet/objects"));
+            _statCache = null;
+            _sparse = null;
+            _journal = new Journal(new File(".gitlet"));
+            _journal.open();
+            _commitTree = _journal.getCommitTree();
+            _stagingArea = _journal.getStagingArea();
+        }
     }
 
-    /** Write changes to the staging area and commit tree objects. */
+    /** Write changes to the staging area and commit tree objects to the
+     * journal. */
     private static void writeFiles() {
         File gitlet = Utils.join(System.getProperty("user.dir"), ".gitlet");
-        Utils.join(gitlet, "/StagingArea").delete();
-        Utils.writeObject(Utils.join(gitlet, "/StagingArea"), _stagingArea);
-        Utils.join(gitlet, "/CommitTree").delete();
-        Utils.writeObject(Utils.join(gitlet, "/CommitTree"), _commitTree);
+        try (Trace.Span span = Trace.span("writeFiles")) {
+            _journal.save();
+            if (_statCache != null) {
+                _statCache.write(Utils.join(gitlet, "index"));
+            }
+        }
+    }
+
+    /** Sets whether the repository held in memory is known to be current,
+     * so that commands need not read it again.
+     * @param warm true if the repository in memory is current. */
+    static void setWarm(boolean warm) {
+        _warm = warm;
     }
 
     /** Returns commit tree for gitlet. */
@@ -571,10 +909,52 @@ public class Main {
         return _stagingArea;
     }
 
+    /** Returns object store for gitlet. */
+    public static ObjectStore getObjectStore() {
+        return _objectStore;
+    }
+
+    /** Returns stat cache of the working directory, reading it from
+     * .gitlet/index on first use. */
+    static StatCache getStatCache() {
+        if (_statCache == null) {
+            _statCache = StatCache.read(new File(".gitlet/index"));
+        }
+        return _statCache;
+    }
+
+    /** Returns the sparse-checkout patterns, reading them from
+     * .gitlet/sparse-checkout on first use. */
+    static Sparse getSparse() {
+        if (_sparse == null) {
+            _sparse = Sparse.read(Utils.join(".gitlet", Sparse.FILE_NAME));
+        }
+        return _sparse;
+    }
+
+    /** Days for which gc keeps objects that are no longer reachable. */
+    static final int GC_GRACE_DAYS = 14;
+
     /** Commit tree for gitlet. */
     private static CommitTree _commitTree;
 
     /** Staging Area for gitlet. */
     private static StagingArea _stagingArea;
 
+    /** Object store holding the commits and blobs of gitlet. */
+    private static ObjectStore _objectStore;
+
+    /** Cached blob IDs of files in the working directory, or null if not
+     * yet read. */
+    private static StatCache _statCache;
+
+    /** Sparse-checkout patterns, or null if not yet read. */
+    private static Sparse _sparse;
+
+    /** True if the repository in memory is current. */
+    private static boolean _warm;
+
+    /** Journal of changes to the commit tree and staging area. */
+    private static Journal _journal;
+
 }
@@ -0,0 +1,399 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** Content-addressed object store for Gitlet. A newly written commit or
+ *  blob is kept in its own loose file, .gitlet/objects/XX/YYYY..., where
+ *  XX are the first two characters of its SHA-1 ID and YYYY... are the
+ *  remaining 38, so that a command only reads the objects it actually
+ *  touches. Loose files are zlib (deflate) compressed. The gc command
+ *  moves objects into packfiles under .gitlet/objects/pack. Large blobs
+ *  are stored as lists of chunks; see ChunkList.
+ *  @author Ayela Chughtai
+ */
+class ObjectStore {
+
+    /** Constructor of the object store class.
+     * @param dir directory in which objects are kept. */
+    ObjectStore(File dir) {
+        _dir = dir;
+    }
+
+    /** Returns the directory in which objects are kept. */
+    File getDir() {
+        return _dir;
+    }
+
+    /** Returns the file holding the object with the given ID.
+     * @param id SHA-1 ID of the object. */
+    File file(String id) {
+        return Utils.join(_dir, id.substring(0, 2), id.substring(2));
+    }
+
+    /** Returns true if an object with the given ID has been stored.
+     * @param id SHA-1 ID of the object. */
+    boolean contains(String id) {
+        return file(id).isFile() || findPack(id) != null;
+    }
+
+    /** Returns the directory holding packfiles. */
+    File getPackDir() {
+        return new File(_dir, "pack");
+    }
+
+    /** Returns the packfiles of this store. */
+    synchronized List<PackFile> getPacks() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            File[] indexes = getPackDir().listFiles((d, name) ->
+                    name.startsWith("pack-") && name.endsWith(".idx"));
+            if (indexes != null) {
+                for (File index : indexes) {
+                    _packs.add(new PackFile(index));
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** Returns the pack holding the object with the given ID, or null
+     * if it is not packed.
+     * @param id SHA-1 ID of the object. */
+    private PackFile findPack(String id) {
+        for (PackFile pack : getPacks()) {
+            if (pack.contains(id)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the IDs of all loose objects. */
+    List<String> looseIds() {
+        ArrayList<String> ids = new ArrayList<>();
+        File[] dirs = _dir.listFiles((d, name) -> name.length() == 2);
+        if (dirs == null) {
+            return ids;
+        }
+        for (File dir : dirs) {
+            String[] names = dir.list((d, name) -> !name.startsWith("tmp-"));
+            if (names != null) {
+                for (String name : names) {
+                    ids.add(dir.getName() + name);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Returns the IDs of all objects, loose or packed. */
+    List<String> allIds() {
+        ArrayList<String> ids = new ArrayList<>(looseIds());
+        for (PackFile pack : getPacks()) {
+            ids.addAll(pack.ids());
+        }
+        return ids;
+    }
+
+    /** Returns the time, in milliseconds since the epoch, at which the
+     * object with the given ID was stored: the modification time of its
+     * loose file, or of the pack holding it. Only reachable objects are
+     * packed by gc; see repack.
+     * @param id SHA-1 ID of the object. */
+    long lastModified(String id) {
+        File file = file(id);
+        if (file.isFile()) {
+            return file.lastModified();
+        }
+        PackFile pack = findPack(id);
+        return pack == null ? 0 : pack.getPack().lastModified();
+    }
+
+    /** Moves the objects with IDs in KEEP into one new packfile, leaves
+     * those with IDs in LOOSE as loose objects, and deletes all existing
+     * packs and all other objects. A packed object in LOOSE is unpacked
+     * into a loose file bearing the modification time of its pack, so
+     * that it keeps its age.
+     * @param keep IDs of the objects to pack, all of which are stored.
+     * @param loose IDs of the objects to leave loose, all of which are
+     *              stored and none of which are in KEEP.
+     * @param bases map from blob IDs to the IDs of the previous versions
+     *              of the same files, against which they may be stored
+     *              as deltas. */
+    @SuppressWarnings({"ResultOfMethodCallIgnored"})
+    void repack(Collection<String> keep, Collection<String> loose,
+                HashMap<String, String> bases) {
+        List<String> looseIds = looseIds();
+        List<PackFile> oldPacks = getPacks();
+        if (loose.containsAll(looseIds) && oldPacks.size() == 1
+                && oldPacks.get(0).ids().size() == keep.size()) {
+            return;
+        }
+        for (String id : loose) {
+            if (!file(id).isFile()) {
+                unpack(id);
+            }
+        }
+        PackFile pack = null;
+        if (!keep.isEmpty()) {
+            pack = PackFile.write(this, new ArrayList<>(keep), bases,
+                    getPackDir());
+        }
+        for (PackFile old : oldPacks) {
+            if (pack == null || !old.getIndex().equals(pack.getIndex())) {
+                old.getIndex().delete();
+                old.getPack().delete();
+            }
+        }
+        for (String id : looseIds) {
+            if (!loose.contains(id)) {
+                file(id).delete();
+                file(id).getParentFile().delete();
+            }
+        }
+        _packs = new ArrayList<>();
+        if (pack != null) {
+            _packs.add(pack);
+        }
+    }
+
+    /** Writes the packed object with the given ID, as it is stored, to a
+     * loose file whose modification time is that of its pack.
+     * @param id SHA-1 ID of the object. */
+    @SuppressWarnings({"ResultOfMethodCallIgnored"})
+    private void unpack(String id) {
+        long time = lastModified(id);
+        byte[] stored = readStored(id);
+        File temp = tempFile();
+        try (OutputStream out = compress(temp)) {
+            out.write(stored);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        install(temp, id);
+        file(id).setLastModified(time);
+    }
+
+    /** Copies the objects with the given IDS from the store FROM into
+     * this one, as a single new pack.
+     * @param from object store holding the objects.
+     * @param ids IDs of the objects to be copied. */
+    void receive(ObjectStore from, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        PackFile pack = PackFile.write(from, new ArrayList<>(ids),
+                new HashMap<>(), getPackDir());
+        for (PackFile old : getPacks()) {
+            if (old.getIndex().equals(pack.getIndex())) {
+                return;
+            }
+        }
+        getPacks().add(pack);
+    }
+
+    /** Stores CONTENTS under ID, unless an object with that ID is already
+     * present. Objects are immutable, so an existing one is never
+     * rewritten.
+     * @param id SHA-1 ID of the object.
+     * @param contents bytes of the object. */
+    void write(String id, byte[] contents) {
+        if (contains(id)) {
+            return;
+        }
+        File temp = tempFile();
+        try (OutputStream out = compress(temp)) {
+            out.write(contents);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        install(temp, id);
+    }
+
+    /** Returns a new, empty temporary file inside the store, into which
+     * an object whose ID is not yet known may be written. */
+    File tempFile() {
+        try {
+            _dir.mkdirs();
+            return File.createTempFile("tmp-", "", _dir);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream that compresses whatever is written to it into
+     * the file TEMP.
+     * @param temp file obtained from tempFile. */
+    OutputStream compress(File temp) {
+        try {
+            return new DeflaterOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temp.toPath())));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Moves the completed temporary file TEMP into place as the object
+     * with the given ID, or discards it if that object already exists.
+     * @param temp file obtained from tempFile.
+     * @param id SHA-1 ID of the object. */
+    @SuppressWarnings({"ResultOfMethodCallIgnored"})
+    void install(File temp, String id) {
+        File file = file(id);
+        if (file.exists()) {
+            temp.delete();
+            return;
+        }
+        file.getParentFile().mkdirs();
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        } else {
+            Trace.add(Trace.OBJECTS_WRITTEN, 1);
+            Trace.add(Trace.BYTES_WRITTEN, file.length());
+        }
+    }
+
+    /** Returns a stream of the contents of the object with the given
+     * ID. The contents of a blob stored as chunks are read from its
+     * chunks as the stream reaches them.
+     * @param id SHA-1 ID of the object. */
+    InputStream open(String id) {
+        InputStream in = openStored(id);
+        try {
+            byte[] header = in.readNBytes(ChunkList.HEADER_BYTES);
+            if (!ChunkList.isHeader(header)) {
+                return new SequenceInputStream(
+                        new ByteArrayInputStream(header), in);
+            }
+            byte[] stored = concat(header, in);
+            ChunkList list = ChunkList.parse(id, stored);
+            return list == null ? new ByteArrayInputStream(stored)
+                    : list.open(this);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream of the uncompressed object with the given ID as
+     * it is stored: for a blob stored as chunks, its chunk list.
+     * @param id SHA-1 ID of the object. */
+    InputStream openStored(String id) {
+        File file = file(id);
+        if (!file.isFile()) {
+            PackFile pack = findPack(id);
+            if (pack == null) {
+                throw Utils.error("No object with id %s.", id);
+            }
+            return pack.open(id);
+        }
+        try {
+            return new InflaterInputStream(new BufferedInputStream(
+                    Files.newInputStream(file.toPath())));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of the object with the given ID.
+     * @param id SHA-1 ID of the object. */
+    byte[] read(String id) {
+        return readAll(open(id));
+    }
+
+    /** Returns the object with the given ID as it is stored: for a blob
+     * stored as chunks, its chunk list.
+     * @param id SHA-1 ID of the object. */
+    byte[] readStored(String id) {
+        return readAll(openStored(id));
+    }
+
+    /** Returns the IDs of the chunks of the object with the given ID if
+     * it is a blob stored as chunks, and otherwise none. Reads only the
+     * start of any other object.
+     * @param id SHA-1 ID of the object. */
+    List<String> chunkIds(String id) {
+        try (InputStream in = openStored(id)) {
+            byte[] header = in.readNBytes(ChunkList.HEADER_BYTES);
+            ChunkList list = ChunkList.isHeader(header)
+                    ? ChunkList.parse(id, concat(header, in)) : null;
+            return list == null ? List.of() : list.getChunkIds();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Stores CONTENTS as the blob with the given ID: as chunks if it is
+     * at least ChunkList.THRESHOLD bytes long, and otherwise whole.
+     * @param id SHA-1 ID of the blob.
+     * @param contents contents of the blob. */
+    void writeBlob(String id, byte[] contents) {
+        if (contents.length < ChunkList.THRESHOLD) {
+            write(id, contents);
+        } else if (!contains(id)) {
+            ChunkList.write(new ByteArrayInputStream(contents), this);
+        }
+    }
+
+    /** Returns all the bytes of IN, which is then closed.
+     * @param in stream of an object. */
+    private static byte[] readAll(InputStream in) {
+        try (in) {
+            byte[] contents = in.readAllBytes();
+            Trace.add(Trace.OBJECTS_READ, 1);
+            Trace.add(Trace.BYTES_READ, contents.length);
+            return contents;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns HEADER followed by the rest of IN, which is then closed.
+     * @param header bytes already read from IN.
+     * @param in stream of an object. */
+    private static byte[] concat(byte[] header, InputStream in)
+        throws IOException {
+        try (in) {
+            byte[] rest = in.readAllBytes();
+            byte[] result = new byte[header.length + rest.length];
+            System.arraycopy(header, 0, result, 0, header.length);
+            System.arraycopy(rest, 0, result, header.length, rest.length);
+            return result;
+        }
+    }
+
+    /** Stores the encoding of OBJ under ID.
+     * @param id SHA-1 ID of the object.
+     * @param obj object to be stored. */
+    void writeObject(String id, Object obj) {
+        write(id, Codec.encode(obj));
+    }
+
+    /** Returns the object stored under ID, cast to EXPECTEDCLASS.
+     * @param id SHA-1 ID of the object.
+     * @param expectedClass class of the object.
+     * @param <T> type of the object. */
+    <T> T readObject(String id, Class<T> expectedClass) {
+        return Codec.decode(read(id), expectedClass);
+    }
+
+    /** Directory in which objects are kept. */
+    private File _dir;
+
+    /** Packfiles of this store, or null if not yet loaded. */
+    private List<PackFile> _packs;
+
+}
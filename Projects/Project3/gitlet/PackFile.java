@@ -0,0 +1,465 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** A packfile holding many Gitlet objects in one file, together with an
+ *  index for random access. Pack files are named pack-ID.pack and index
+ *  files pack-ID.idx, where ID is the SHA-1 hash of the packed object IDs.
+ *
+ *  Each entry of a pack is a type byte followed by a zlib stream. A FULL
+ *  entry's stream holds the object itself. A DELTA entry has the offset of
+ *  its base entry in the same pack as an 8-byte number before the stream,
+ *  which holds a Delta from the base's contents to the object's.
+ *
+ *  An index holds a 256-entry fanout table (the number of IDs whose first
+ *  byte is at most each value), the sorted 20-byte IDs, and the offset of
+ *  each object's entry in the pack.
+ *  @author Ayela Chughtai
+ */
+class PackFile {
+
+    /** Type byte of an entry holding a whole object. */
+    static final int FULL = 0;
+
+    /** Type byte of an entry holding a delta against another entry. */
+    static final int DELTA = 1;
+
+    /** Longest chain of deltas an object is stored at the end of. */
+    static final int MAX_DEPTH = 50;
+
+    /** Largest object that is delta encoded; bigger ones are only
+     * compressed, so that packing takes bounded memory. */
+    static final int DELTA_LIMIT = 1 << 24;
+
+    /** Magic number at the start of an index file. */
+    private static final int INDEX_MAGIC = 0x47494458;
+
+    /** Version of the index format. */
+    private static final int VERSION = 1;
+
+    /** Length of the index header: magic, version and count. */
+    private static final int HEADER = 12;
+
+    /** Length of an object ID in bytes. */
+    private static final int ID_BYTES = 20;
+
+    /** Constructor of the pack file class.
+     * @param index index file of the pack. */
+    PackFile(File index) {
+        String name = index.getName();
+        _pack = new File(index.getParentFile(),
+                name.substring(0, name.length() - ".idx".length())
+                        + ".pack");
+        _index = index;
+        try (FileChannel channel = FileChannel.open(index.toPath(),
+                StandardOpenOption.READ)) {
+            _map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            _map.order(ByteOrder.BIG_ENDIAN);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_map.getInt(0) != INDEX_MAGIC || _map.getInt(4) != VERSION) {
+            throw Utils.error("Bad pack index %s.", name);
+        }
+        _count = _map.getInt(8);
+    }
+
+    /** Returns the pack file. */
+    File getPack() {
+        return _pack;
+    }
+
+    /** Returns the index file. */
+    File getIndex() {
+        return _index;
+    }
+
+    /** Returns the number of objects in the pack. */
+    int size() {
+        return _count;
+    }
+
+    /** Returns the IDs of all objects in the pack, in sorted order. */
+    List<String> ids() {
+        ArrayList<String> ids = new ArrayList<>(_count);
+        for (int i = 0; i < _count; i += 1) {
+            ids.add(idAt(i));
+        }
+        return ids;
+    }
+
+    /** Returns true if the pack holds the object with the given ID.
+     * @param id SHA-1 ID of the object. */
+    boolean contains(String id) {
+        return offset(id) >= 0;
+    }
+
+    /** Returns a stream of the contents of the object with the given ID,
+     * which must be in this pack.
+     * @param id SHA-1 ID of the object. */
+    InputStream open(String id) {
+        long offset = offset(id);
+        if (offset < 0) {
+            throw Utils.error("No object with id %s.", id);
+        }
+        try {
+            FileChannel channel = FileChannel.open(_pack.toPath(),
+                    StandardOpenOption.READ);
+            channel.position(offset);
+            InputStream in = new BufferedInputStream(
+                    Channels.newInputStream(channel));
+            if (in.read() == FULL) {
+                return new InflaterInputStream(in);
+            }
+            in.close();
+            return new ByteArrayInputStream(readAt(offset));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of the object whose entry starts at OFFSET,
+     * applying any deltas.
+     * @param offset position of the entry in the pack. */
+    private byte[] readAt(long offset) {
+        try (RandomAccessFile file = new RandomAccessFile(_pack, "r")) {
+            file.seek(offset);
+            int type = file.read();
+            long base = type == DELTA ? file.readLong() : -1;
+            InputStream in = new InflaterInputStream(new BufferedInputStream(
+                    Channels.newInputStream(file.getChannel())));
+            byte[] data = in.readAllBytes();
+            if (type == DELTA) {
+                return Delta.apply(readAt(base), data);
+            }
+            return data;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the offset in the pack of the entry of the object with the
+     * given ID, or -1 if it is not in this pack.
+     * @param id SHA-1 ID of the object. */
+    long offset(String id) {
+        byte[] key = toBytes(id);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : _map.getInt(HEADER + 4 * (first - 1));
+        int hi = _map.getInt(HEADER + 4 * first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareAt(mid, key);
+            if (cmp == 0) {
+                return _map.getLong(offsetsStart() + 8 * mid);
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the comparison of the Ith ID of the index with KEY.
+     * @param i index of an ID.
+     * @param key ID as bytes. */
+    private int compareAt(int i, byte[] key) {
+        int start = idsStart() + ID_BYTES * i;
+        for (int k = 0; k < ID_BYTES; k += 1) {
+            int c = (_map.get(start + k) & 0xff) - (key[k] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the Ith ID of the index.
+     * @param i index of an ID. */
+    private String idAt(int i) {
+        byte[] id = new byte[ID_BYTES];
+        int start = idsStart() + ID_BYTES * i;
+        for (int k = 0; k < ID_BYTES; k += 1) {
+            id[k] = _map.get(start + k);
+        }
+        return Utils.toHex(id);
+    }
+
+    /** Returns the position of the first ID in the index. */
+    private int idsStart() {
+        return HEADER + 4 * 256;
+    }
+
+    /** Returns the position of the first offset in the index. */
+    private int offsetsStart() {
+        return idsStart() + ID_BYTES * _count;
+    }
+
+    /** Returns the 20 bytes of the hexadecimal ID.
+     * @param id SHA-1 ID. */
+    static byte[] toBytes(String id) {
+        byte[] result = new byte[ID_BYTES];
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                    id.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Writes the objects of OBJECTS with the given IDS into a new pack in
+     * DIR, and returns it. An object whose ID is a key of BASES is stored
+     * as a delta against the object it maps to, if that object is also
+     * being packed and the delta is smaller than the object itself.
+     * @param objects store holding the objects.
+     * @param ids IDs of the objects to be packed.
+     * @param bases map from IDs to the IDs of their preferred bases.
+     * @param dir directory in which to write the pack. */
+    @SuppressWarnings({"ResultOfMethodCallIgnored"})
+    static PackFile write(ObjectStore objects, List<String> ids,
+                          HashMap<String, String> bases, File dir) {
+        ArrayList<String> sorted = new ArrayList<>(new HashSet<>(ids));
+        Collections.sort(sorted);
+        dir.mkdirs();
+        String name = "pack-" + Utils.sha1(String.join("", sorted));
+        File pack = new File(dir, name + ".pack");
+        File index = new File(dir, name + ".idx");
+        if (index.isFile()) {
+            return new PackFile(index);
+        }
+        File tempPack = new File(dir, "tmp-" + name + ".pack");
+        File tempIndex = new File(dir, "tmp-" + name + ".idx");
+        HashMap<String, Long> offsets = new HashMap<>();
+        try (CountingOutputStream out = new CountingOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        tempPack.toPath())))) {
+            Writer writer = new Writer(objects, bases, out, offsets,
+                    new HashSet<>(sorted));
+            for (String id : sorted) {
+                writer.write(id);
+            }
+            writer.finish();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        writeIndex(tempIndex, sorted, offsets);
+        tempPack.renameTo(pack);
+        tempIndex.renameTo(index);
+        return new PackFile(index);
+    }
+
+    /** Writes an index of the SORTED IDs and their OFFSETS to FILE.
+     * @param file index file.
+     * @param sorted IDs in sorted order.
+     * @param offsets map from IDs to offsets in the pack. */
+    private static void writeIndex(File file, List<String> sorted,
+                                   HashMap<String, Long> offsets) {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        file.toPath())))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            int[] fanout = new int[256];
+            for (String id : sorted) {
+                fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+            }
+            int total = 0;
+            for (int count : fanout) {
+                total += count;
+                out.writeInt(total);
+            }
+            for (String id : sorted) {
+                out.write(toBytes(id));
+            }
+            for (String id : sorted) {
+                out.writeLong(offsets.get(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the entries of a pack, placing each delta's base before
+     * it. */
+    private static class Writer {
+
+        /** A writer of entries to OUT.
+         * @param objects store holding the objects.
+         * @param bases map from IDs to preferred bases.
+         * @param out the pack being written.
+         * @param offsets receives the offset of each entry written.
+         * @param packing IDs of all objects being packed. */
+        Writer(ObjectStore objects, HashMap<String, String> bases,
+               CountingOutputStream out, HashMap<String, Long> offsets,
+               HashSet<String> packing) {
+            _objects = objects;
+            _bases = bases;
+            _out = out;
+            _offsets = offsets;
+            _packing = packing;
+            _depths = new HashMap<>();
+            _deflater = new Deflater();
+        }
+
+        /** Writes the entry for ID, after that of its base, unless it has
+         * been written already.
+         * @param id SHA-1 ID of the object. */
+        void write(String id) throws IOException {
+            if (_offsets.containsKey(id)) {
+                return;
+            }
+            String base = _bases.get(id);
+            if (base != null && _packing.contains(base)
+                    && !_offsets.containsKey(base)) {
+                write(base);
+            }
+            if (_offsets.containsKey(id)) {
+                return;
+            }
+            long offset = _out.getCount();
+            byte[] delta = delta(id, base);
+            if (delta != null) {
+                _out.write(DELTA);
+                new DataOutputStream(_out).writeLong(_offsets.get(base));
+                deflate(new ByteArrayInputStream(delta));
+                _depths.put(id, _depths.getOrDefault(base, 0) + 1);
+            } else {
+                _out.write(FULL);
+                try (InputStream in = _objects.openStored(id)) {
+                    deflate(in);
+                }
+            }
+            _offsets.put(id, offset);
+        }
+
+        /** Returns a delta from BASE to ID if ID should be stored as one,
+         * and otherwise null.
+         * @param id SHA-1 ID of the object.
+         * @param base SHA-1 ID of its preferred base, or null. */
+        private byte[] delta(String id, String base) {
+            if (base == null || !_offsets.containsKey(base)
+                    || _depths.getOrDefault(base, 0) >= MAX_DEPTH
+                    || size(id) > DELTA_LIMIT || size(base) > DELTA_LIMIT) {
+                return null;
+            }
+            byte[] target = _objects.readStored(id);
+            byte[] delta = Delta.encode(_objects.readStored(base), target);
+            return delta.length < target.length ? delta : null;
+        }
+
+        /** Returns an upper bound on the size of the object ID, without
+         * reading more than DELTA_LIMIT bytes of it.
+         * @param id SHA-1 ID of the object. */
+        private long size(String id) {
+            try (InputStream in = _objects.openStored(id)) {
+                return in.skip(DELTA_LIMIT + 1L);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Writes the contents of IN to the pack as one zlib stream.
+         * @param in stream of bytes to be compressed. */
+        private void deflate(InputStream in) throws IOException {
+            _deflater.reset();
+            DeflaterOutputStream out = new DeflaterOutputStream(_out,
+                    _deflater);
+            in.transferTo(out);
+            out.finish();
+        }
+
+        /** Releases the resources of the writer. */
+        void finish() {
+            _deflater.end();
+        }
+
+        /** Store holding the objects. */
+        private ObjectStore _objects;
+
+        /** Map from IDs to preferred bases. */
+        private HashMap<String, String> _bases;
+
+        /** The pack being written. */
+        private CountingOutputStream _out;
+
+        /** Map from IDs written to their offsets. */
+        private HashMap<String, Long> _offsets;
+
+        /** IDs of all objects being packed. */
+        private HashSet<String> _packing;
+
+        /** Map from IDs written as deltas to the lengths of their
+         * chains. */
+        private HashMap<String, Integer> _depths;
+
+        /** Compressor shared by all entries. */
+        private Deflater _deflater;
+    }
+
+    /** An output stream that counts the bytes written through it. */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        /** A stream writing to OUT.
+         * @param out underlying stream. */
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            _count += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            _count += len;
+        }
+
+        /** Returns the number of bytes written. */
+        long getCount() {
+            return _count;
+        }
+
+        /** Number of bytes written. */
+        private long _count;
+    }
+
+    /** The pack file. */
+    private File _pack;
+
+    /** The index file. */
+    private File _index;
+
+    /** Contents of the index file. */
+    private MappedByteBuffer _map;
+
+    /** Number of objects in the pack. */
+    private int _count;
+
+}
@@ -0,0 +1,203 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Unified diffs for Gitlet, as written by git diff. Each file is
+ *  written as soon as it has been diffed, one hunk at a time, through a
+ *  buffer of fixed size, so the output of a diff is never held whole.
+ *  Each hunk holds a run of changes at most twice CONTEXT lines apart
+ *  and the CONTEXT unchanged lines around them. Files with a NUL byte
+ *  among their first BINARY_CHECK bytes are reported only as differing.
+ *  @author Ayela Chughtai
+ */
+class Patch {
+
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** Number of leading bytes searched for a NUL byte. */
+    static final int BINARY_CHECK = 8000;
+
+    /** Number of characters of a blob ID shown. */
+    static final int ABBREV = 7;
+
+    /** Size of the output buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** A patch written to OUT.
+     * @param out destination. */
+    Patch(OutputStream out) {
+        _out = new BufferedOutputStream(out, BUFFER_SIZE);
+    }
+
+    /** Writes the differences between two versions of the file NAME.
+     * @param name name of the file.
+     * @param beforeId blob ID of the earlier version, or null if the file
+     *                 was absent.
+     * @param before contents of the earlier version, or null.
+     * @param afterId blob ID of the later version, or null if the file is
+     *                absent.
+     * @param after contents of the later version, or null. */
+    void file(String name, String beforeId, byte[] before, String afterId,
+              byte[] after) {
+        name = new String(name.getBytes(StandardCharsets.UTF_8),
+                StandardCharsets.ISO_8859_1);
+        String a = before == null ? "/dev/null" : "a/" + name;
+        String b = after == null ? "/dev/null" : "b/" + name;
+        print("diff --git a/" + name + " b/" + name + "\n");
+        if (before == null) {
+            print("new file\n");
+        } else if (after == null) {
+            print("deleted file\n");
+        }
+        print("index " + abbrev(beforeId) + ".." + abbrev(afterId) + "\n");
+        if (isBinary(before) || isBinary(after)) {
+            print("Binary files " + a + " and " + b + " differ\n");
+            return;
+        }
+        print("--- " + a + "\n+++ " + b + "\n");
+        List<String> x = Diff.lines(before == null ? new byte[0] : before);
+        List<String> y = Diff.lines(after == null ? new byte[0] : after);
+        ArrayList<int[]> changes = changes(x, y);
+        int first = 0;
+        while (first < changes.size()) {
+            int last = first;
+            while (last + 1 < changes.size() && changes.get(last + 1)[0]
+                   - changes.get(last)[1] <= 2 * CONTEXT) {
+                last += 1;
+            }
+            hunk(x, y, changes.subList(first, last + 1));
+            first = last + 1;
+        }
+    }
+
+    /** Writes out whatever is still buffered. */
+    void flush() {
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the runs of changed lines between X and Y, each as the
+     * start and end of its lines in X followed by the start and end of
+     * its lines in Y.
+     * @param x lines of the earlier version.
+     * @param y lines of the later version. */
+    private static ArrayList<int[]> changes(List<String> x,
+                                            List<String> y) {
+        int[] matches = Diff.matches(x, y);
+        ArrayList<int[]> changes = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < x.size() || j < y.size()) {
+            if (i < x.size() && matches[i] == j) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int xStart = i;
+            int yStart = j;
+            while (i < x.size() && matches[i] < 0) {
+                i += 1;
+            }
+            j = i < x.size() ? matches[i] : y.size();
+            changes.add(new int[] {xStart, i, yStart, j});
+        }
+        return changes;
+    }
+
+    /** Writes the hunk holding CHANGES, runs of changed lines between X
+     * and Y as returned by changes, with the lines around them.
+     * @param x lines of the earlier version.
+     * @param y lines of the later version.
+     * @param changes the runs of changed lines in the hunk. */
+    private void hunk(List<String> x, List<String> y, List<int[]> changes) {
+        int[] first = changes.get(0);
+        int[] last = changes.get(changes.size() - 1);
+        int xStart = Math.max(0, first[0] - CONTEXT);
+        int yStart = first[2] - (first[0] - xStart);
+        int xEnd = Math.min(x.size(), last[1] + CONTEXT);
+        int yEnd = last[3] + (xEnd - last[1]);
+        print("@@ -" + range(xStart, xEnd - xStart) + " +"
+                + range(yStart, yEnd - yStart) + " @@\n");
+        int i = xStart;
+        for (int[] change : changes) {
+            lines(' ', x, i, change[0]);
+            lines('-', x, change[0], change[1]);
+            lines('+', y, change[2], change[3]);
+            i = change[1];
+        }
+        lines(' ', x, i, xEnd);
+    }
+
+    /** Writes LINES[START..END), each preceded by PREFIX.
+     * @param prefix character marking the lines.
+     * @param lines lines of a file.
+     * @param start index of the first line written.
+     * @param end index after the last line written. */
+    private void lines(char prefix, List<String> lines, int start,
+                       int end) {
+        for (int i = start; i < end; i += 1) {
+            String line = lines.get(i);
+            print(prefix + line);
+            if (!line.endsWith("\n")) {
+                print("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /** Returns the line range of a hunk header for LENGTH lines after
+     * the first START lines.
+     * @param start number of lines before the range.
+     * @param length number of lines in the range. */
+    private static String range(int start, int length) {
+        if (length == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (length == 0 ? start : start + 1) + "," + length;
+    }
+
+    /** Returns the abbreviation of the blob ID BLOBID, or zeros if it is
+     * null.
+     * @param blobId a blob ID, or null. */
+    private static String abbrev(String blobId) {
+        return blobId == null ? "0".repeat(ABBREV)
+                : blobId.substring(0, ABBREV);
+    }
+
+    /** Returns true if CONTENTS have a NUL byte among their first
+     * BINARY_CHECK bytes.
+     * @param contents contents of a file, or null. */
+    private static boolean isBinary(byte[] contents) {
+        if (contents == null) {
+            return false;
+        }
+        for (int i = 0; i < contents.length && i < BINARY_CHECK; i += 1) {
+            if (contents[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Writes TEXT, whose characters each stand for one byte.
+     * @param text characters to be written. */
+    private void print(String text) {
+        try {
+            _out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Buffered destination of the patch. */
+    private final BufferedOutputStream _out;
+
+}
@@ -0,0 +1,133 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.TreeSet;
+
+/** Another Gitlet repository on the local file system, given by the path
+ *  of its .gitlet directory, to and from which commits are pushed and
+ *  fetched.
+ *
+ *  A transfer copies a commit and every ancestor of it that the receiving
+ *  repository lacks. The receiving side's commit index answers which
+ *  commits it already has, and the walk stops at each of them; the trees
+ *  of the missing commits are then walked, skipping every subtree the
+ *  receiver already stores. Only the objects found missing are copied,
+ *  all together as one new pack, after which their commits are appended
+ *  to the receiver's commit graph.
+ *  @author Ayela Chughtai
+ */
+class Remote {
+
+    /** Constructor of the remote class.
+     * @param dir the .gitlet directory of the remote repository. */
+    Remote(File dir) {
+        _dir = dir;
+    }
+
+    /** Returns true if the remote repository exists. */
+    boolean exists() {
+        return _dir.isDirectory();
+    }
+
+    /** Returns the journal of the remote repository, opened. */
+    Journal getJournal() {
+        if (_journal == null) {
+            _journal = new Journal(_dir);
+            _journal.open();
+        }
+        return _journal;
+    }
+
+    /** Returns the object store of the remote repository. */
+    ObjectStore getObjectStore() {
+        if (_objects == null) {
+            _objects = new ObjectStore(Utils.join(_dir, "objects"));
+        }
+        return _objects;
+    }
+
+    /** Returns the commit graph of the remote repository. */
+    CommitGraph getGraph() {
+        if (_graph == null) {
+            _graph = new CommitGraph(Utils.join(_dir, "commit-graph"));
+        }
+        return _graph;
+    }
+
+    /** Returns the commit index of the remote repository. */
+    CommitIndex getIndex() {
+        if (_index == null) {
+            _index = new CommitIndex(Utils.join(_dir, "commit-index"),
+                    getGraph());
+        }
+        return _index;
+    }
+
+    /** Copies the commit with ID HEAD, and those of its ancestors that are
+     * not yet in TOGRAPH, along with their trees and blobs, from one
+     * repository to another.
+     * @param head ID of a commit in FROMGRAPH.
+     * @param fromStore object store of the sending repository.
+     * @param fromGraph commit graph of the sending repository.
+     * @param fromIndex commit index of the sending repository.
+     * @param toStore object store of the receiving repository.
+     * @param toGraph commit graph of the receiving repository.
+     * @param toIndex commit index of the receiving repository. */
+    static void transfer(String head, ObjectStore fromStore,
+                         CommitGraph fromGraph, CommitIndex fromIndex,
+                         ObjectStore toStore, CommitGraph toGraph,
+                         CommitIndex toIndex) {
+        TreeSet<Integer> missing = new TreeSet<>();
+        ArrayDeque<Integer> pending = new ArrayDeque<>();
+        pending.push(fromIndex.findPrefix(head));
+        while (!pending.isEmpty()) {
+            int i = pending.pop();
+            if (i < 0 || missing.contains(i)
+                    || toIndex.findPrefix(fromGraph.idAt(i)) >= 0) {
+                continue;
+            }
+            missing.add(i);
+            pending.push(fromGraph.firstParent(i));
+            pending.push(fromGraph.secondParent(i));
+        }
+        HashSet<String> objects = new HashSet<>();
+        for (int i : missing) {
+            String commitId = fromGraph.idAt(i);
+            objects.add(commitId);
+            Tree.missing(fromStore.readObject(commitId, Commit.class)
+                    .getTreeId(), fromStore, toStore, objects);
+        }
+        for (String id : new ArrayList<>(objects)) {
+            for (String chunkId : fromStore.chunkIds(id)) {
+                if (!toStore.contains(chunkId)) {
+                    objects.add(chunkId);
+                }
+            }
+        }
+        toStore.receive(fromStore, objects);
+        toGraph.appendFrom(fromGraph, new ArrayList<>(missing), toIndex);
+        toIndex.update();
+    }
+
+    /** The .gitlet directory of the remote repository. */
+    private File _dir;
+
+    /** Journal of the remote repository, or null if not yet opened. */
+    private Journal _journal;
+
+    /** Object store of the remote repository, or null if not yet
+     * opened. */
+    private ObjectStore _objects;
+
+    /** Commit graph of the remote repository, or null if not yet
+     * opened. */
+    private CommitGraph _graph;
+
+    /** Commit index of the remote repository, or null if not yet
+     * opened. */
+    private CommitIndex _index;
+
+}
@@ -0,0 +1,271 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Detection of renamed and copied files by the similarity of their
+ *  contents, as in git.
+ *
+ *  The contents of a file are cut into chunks where a rolling hash of the
+ *  bytes before each position matches a pattern, so that an edit changes
+ *  only the chunks around it and the chunks elsewhere stay the same
+ *  however much the edit moved them. The fingerprint of a file maps the
+ *  hash of each of its chunks to the bytes it holds in such chunks. Two
+ *  files are as similar as the bytes of the chunks they share are a
+ *  proportion of the longer one, and a file is taken to have come from
+ *  another if they are at least MIN_SIMILARITY percent similar.
+ *
+ *  Files with identical contents are paired by blob ID first, without
+ *  reading them. The rest are paired through an index from the hash of
+ *  each chunk to the sources holding it, so each file is compared only
+ *  with the sources with which it has a chunk in common, and the work
+ *  grows with the total size of the files rather than with the product
+ *  of their numbers. Chunks held by more than MAX_SOURCES sources, such
+ *  as blank lines, are left out of the comparison. Pairs are chosen most
+ *  similar first.
+ *  @author Ayela Chughtai
+ */
+class Renames {
+
+    /** Least similarity, in percent, of a file to the file it came
+     * from. */
+    static final int MIN_SIMILARITY = 50;
+
+    /** Largest number of sources holding a chunk that is compared. */
+    static final int MAX_SOURCES = 64;
+
+    /** Least length of a chunk, but for the last of a file. */
+    static final int MIN_CHUNK = 8;
+
+    /** Greatest length of a chunk. */
+    static final int MAX_CHUNK = 512;
+
+    /** Bits of the rolling hash that are zero at the end of a chunk: the
+     * top five, making chunks 32 bytes longer than MIN_CHUNK on
+     * average. */
+    private static final long BOUNDARY_MASK = 0xf800000000000000L;
+
+    /** Offset basis of the FNV-1a hash of chunks. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+
+    /** Prime of the FNV-1a hash of chunks. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Returns the files renamed between the commits FROM and TO, as a
+     * map from the new name of each to its old name.
+     * @param from earlier commit.
+     * @param to later commit. */
+    static TreeMap<String, String> between(Commit from, Commit to) {
+        ArrayList<String> changed = new ArrayList<>();
+        Tree.diff(from.getTreeId(), to.getTreeId(), changed);
+        HashMap<String, String> removed = new HashMap<>();
+        HashMap<String, String> added = new HashMap<>();
+        for (String fileName : changed) {
+            String before = from.getBlobId(fileName);
+            String after = to.getBlobId(fileName);
+            if (after == null) {
+                removed.put(fileName, before);
+            } else if (before == null) {
+                added.put(fileName, after);
+            }
+        }
+        return find(removed, added);
+    }
+
+    /** Returns the files of ADDED renamed from files of REMOVED, as a map
+     * from the new name of each to its old name. Each file removed is
+     * the source of at most one rename.
+     * @param removed map from the names of files removed to their blob
+     *                IDs.
+     * @param added map from the names of files added to their blob
+     *              IDs. */
+    static TreeMap<String, String> find(Map<String, String> removed,
+                                        Map<String, String> added) {
+        return pair(removed, removed, added, true);
+    }
+
+    /** Returns the files of ADDED copied from other files, as a map from
+     * the name of each copy to the name of its source. A file is a copy
+     * of a file of UNCHANGED only if it is identical to it, and of a file
+     * of MODIFIED if it is similar to its previous version, since
+     * comparing with every unchanged file would mean reading them all. A
+     * source may be copied any number of times.
+     * @param unchanged map from the names of files left unchanged to
+     *                  their blob IDs.
+     * @param modified map from the names of files modified to the blob
+     *                 IDs of their previous versions.
+     * @param added map from the names of files added to their blob
+     *              IDs. */
+    static TreeMap<String, String> findCopies(Map<String, String> unchanged,
+                                              Map<String, String> modified,
+                                              Map<String, String> added) {
+        HashMap<String, String> sources = new HashMap<>(unchanged);
+        sources.putAll(modified);
+        return pair(sources, modified, added, false);
+    }
+
+    /** Returns the files of ADDED that came from files of SOURCES, as a
+     * map from the name of each to the name of its source: an identical
+     * file of SOURCES, or else one of SIMILAR at least MIN_SIMILARITY
+     * percent similar. If ONCE, each source is used at most once.
+     * @param sources map from the names of possible sources to blob IDs.
+     * @param similar the sources compared for similarity.
+     * @param added map from the names of files added to blob IDs.
+     * @param once true if each source may be used only once. */
+    private static TreeMap<String, String> pair(Map<String, String> sources,
+                                                Map<String, String> similar,
+                                                Map<String, String> added,
+                                                boolean once) {
+        TreeMap<String, String> result = new TreeMap<>();
+        HashMap<String, String> byBlob = new HashMap<>();
+        for (Map.Entry<String, String> entry
+                 : new TreeMap<>(sources).entrySet()) {
+            byBlob.putIfAbsent(entry.getValue(), entry.getKey());
+        }
+        HashSet<String> used = new HashSet<>();
+        TreeMap<String, String> unpaired = new TreeMap<>();
+        for (Map.Entry<String, String> entry
+                 : new TreeMap<>(added).entrySet()) {
+            String source = byBlob.get(entry.getValue());
+            if (source != null && (!once || used.add(source))) {
+                result.put(entry.getKey(), source);
+            } else {
+                unpaired.put(entry.getKey(), entry.getValue());
+            }
+        }
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<Fingerprint> prints = new ArrayList<>();
+        if (!unpaired.isEmpty()) {
+            for (Map.Entry<String, String> entry
+                     : new TreeMap<>(similar).entrySet()) {
+                if (!used.contains(entry.getKey())) {
+                    names.add(entry.getKey());
+                    prints.add(new Fingerprint(
+                            Blob.readContents(entry.getValue())));
+                }
+            }
+        }
+        if (prints.isEmpty()) {
+            return result;
+        }
+        HashMap<Long, ArrayList<Integer>> index = new HashMap<>();
+        for (int s = 0; s < prints.size(); s += 1) {
+            for (long chunk : prints.get(s)._bytes.keySet()) {
+                index.computeIfAbsent(chunk, c -> new ArrayList<>()).add(s);
+            }
+        }
+        ArrayList<Candidate> candidates = new ArrayList<>();
+        for (Map.Entry<String, String> entry : unpaired.entrySet()) {
+            Fingerprint print = new Fingerprint(
+                    Blob.readContents(entry.getValue()));
+            for (Map.Entry<Integer, Long> match
+                     : print.shared(prints, index).entrySet()) {
+                Fingerprint source = prints.get(match.getKey());
+                long longer = Math.max(print._size, source._size);
+                int similarity = (int) (100 * match.getValue() / longer);
+                if (similarity >= MIN_SIMILARITY) {
+                    candidates.add(new Candidate(similarity,
+                            entry.getKey(), names.get(match.getKey())));
+                }
+            }
+        }
+        candidates.sort(Comparator.comparingInt((Candidate c) ->
+                -c._similarity).thenComparing(c -> c._added)
+                .thenComparing(c -> c._source));
+        for (Candidate candidate : candidates) {
+            if (!result.containsKey(candidate._added)
+                    && (!once || used.add(candidate._source))) {
+                result.put(candidate._added, candidate._source);
+            }
+        }
+        return result;
+    }
+
+    /** The chunks of the contents of a file. */
+    private static class Fingerprint {
+
+        /** The fingerprint of CONTENTS.
+         * @param contents bytes of a file. */
+        Fingerprint(byte[] contents) {
+            _size = contents.length;
+            int start = 0;
+            long rolling = 0;
+            long hash = FNV_BASIS;
+            for (int i = 0; i < contents.length; i += 1) {
+                int b = contents[i] & 0xff;
+                rolling = (rolling << 1) + ChunkList.GEAR[b];
+                hash = (hash ^ b) * FNV_PRIME;
+                int length = i + 1 - start;
+                if (length >= MIN_CHUNK && (rolling & BOUNDARY_MASK) == 0
+                        || length == MAX_CHUNK) {
+                    _bytes.merge(hash, length, Integer::sum);
+                    start = i + 1;
+                    hash = FNV_BASIS;
+                }
+            }
+            if (start < contents.length) {
+                _bytes.merge(hash, contents.length - start, Integer::sum);
+            }
+        }
+
+        /** Returns a map from the index in PRINTS of each source with
+         * which this file shares a chunk to the bytes they share, looking
+         * up the sources holding each chunk in INDEX.
+         * @param prints fingerprints of the sources.
+         * @param index map from chunks to the sources holding them. */
+        HashMap<Integer, Long> shared(List<Fingerprint> prints,
+                                      Map<Long, ArrayList<Integer>> index) {
+            HashMap<Integer, Long> shared = new HashMap<>();
+            for (Map.Entry<Long, Integer> chunk : _bytes.entrySet()) {
+                ArrayList<Integer> holders = index.get(chunk.getKey());
+                if (holders == null || holders.size() > MAX_SOURCES) {
+                    continue;
+                }
+                for (int s : holders) {
+                    int theirs = prints.get(s)._bytes.get(chunk.getKey());
+                    shared.merge(s, (long) Math.min(chunk.getValue(),
+                            theirs), Long::sum);
+                }
+            }
+            return shared;
+        }
+
+        /** Map from the hash of each chunk to the bytes in chunks with
+         * that hash. */
+        private final HashMap<Long, Integer> _bytes = new HashMap<>();
+
+        /** Length of the file. */
+        private final long _size;
+
+    }
+
+    /** A possible pairing of an added file with a source. */
+    private static class Candidate {
+
+        /** A pairing of ADDED with SOURCE, SIMILARITY percent similar.
+         * @param similarity similarity in percent.
+         * @param added name of the added file.
+         * @param source name of the source. */
+        Candidate(int similarity, String added, String source) {
+            _similarity = similarity;
+            _added = added;
+            _source = source;
+        }
+
+        /** Similarity in percent. */
+        private final int _similarity;
+
+        /** Name of the added file. */
+        private final String _added;
+
+        /** Name of the source. */
+        private final String _source;
+
+    }
+
+}
@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Sparse-checkout patterns of a Gitlet repository, kept one per line in
+ *  .gitlet/sparse-checkout. Patterns are globs, in which * matches any
+ *  run of characters and ? any one character.
+ *
+ *  While there are patterns, only the working files whose names match
+ *  one of them are part of the working tree. Checkout, reset and merge
+ *  write only those files and delete only those; status hashes only
+ *  those, and ignores the rest, whether present or missing. Commits still
+ *  hold every file, so the files outside the patterns are carried along
+ *  unchanged from commit to commit without ever being read.
+ *  @author Ayela Chughtai
+ */
+class Sparse {
+
+    /** Name of the file holding the patterns, in the .gitlet directory. */
+    static final String FILE_NAME = "sparse-checkout";
+
+    /** Sparse-checkout patterns PATTERNS, none meaning that every file is
+     * included.
+     * @param patterns glob patterns. */
+    Sparse(List<String> patterns) {
+        _patterns = new ArrayList<>(patterns);
+        _matchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            _matchers.add(FileSystems.getDefault().getPathMatcher(
+                    "glob:" + pattern));
+        }
+    }
+
+    /** Returns the patterns stored in FILE, or none if there is no such
+     * file.
+     * @param file file holding the patterns. */
+    static Sparse read(File file) {
+        if (!file.isFile()) {
+            return new Sparse(new ArrayList<>());
+        }
+        ArrayList<String> patterns = new ArrayList<>();
+        for (String line : Utils.readContentsAsString(file).split("\n")) {
+            if (!line.isEmpty()) {
+                patterns.add(line);
+            }
+        }
+        return new Sparse(patterns);
+    }
+
+    /** Stores these patterns in FILE, deleting it if there are none.
+     * @param file file holding the patterns. */
+    @SuppressWarnings({"ResultOfMethodCallIgnored"})
+    void write(File file) {
+        if (_patterns.isEmpty()) {
+            file.delete();
+        } else {
+            Utils.writeContents(file, String.join("\n", _patterns) + "\n");
+        }
+    }
+
+    /** Returns the patterns. */
+    List<String> getPatterns() {
+        return _patterns;
+    }
+
+    /** Returns true if the working file FILENAME is part of the working
+     * tree.
+     * @param fileName name of a file. */
+    boolean includes(String fileName) {
+        if (_matchers.isEmpty()) {
+            return true;
+        }
+        for (PathMatcher matcher : _matchers) {
+            if (matcher.matches(Paths.get(fileName))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns those of FILENAMES that are part of the working tree.
+     * @param fileNames names of files. */
+    List<String> filter(List<String> fileNames) {
+        if (_matchers.isEmpty()) {
+            return fileNames;
+        }
+        ArrayList<String> result = new ArrayList<>();
+        for (String fileName : fileNames) {
+            if (includes(fileName)) {
+                result.add(fileName);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the names of the plain files in the working directory that
+     * are part of the working tree. */
+    List<String> workingFiles() {
+        return filter(Utils.plainFilenamesIn(
+                System.getProperty("user.dir")));
+    }
+
+    /** The glob patterns, in the order given. */
+    private ArrayList<String> _patterns;
+
+    /** Matchers for the patterns. */
+    private ArrayList<PathMatcher> _matchers;
+
+}
@@ -6,6 +6,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /** StagingArea class for Gitlet, implements serializable interface.
  *  @author Ayela Chughtai
@@ -13,6 +15,10 @@ import java.util.List;
 @SuppressWarnings("ALL")
 public class StagingArea implements Serializable {
 
+    /** Serialization version of the class, fixed so that staging areas
+     * written by Java serialization before Codec can still be read. */
+    private static final long serialVersionUID = -3725033696603451242L;
+
     /** Constructor of the staging area class.
      */
     public StagingArea() {
@@ -22,48 +28,76 @@ public class StagingArea implements Serializable {
         _tracked = new HashMap<>();
     }
 
-    /** Returns HashMap<String, Blob> of files
+    /** A staging area read from IN, encoded in version VERSION of the
+     * format of Codec.
+     * @param in source.
+     * @param version version of the format. */
+    private StagingArea(Codec.Input in, int version) {
+        _added = in.readIdMap(new HashMap<>());
+        _removed = in.readIdMap(new HashMap<>());
+        _removing = in.readIdMap(new HashMap<>());
+        _tracked = in.readIdMap(new HashMap<>());
+    }
+
+    /** Returns the staging area encoded in IN in version VERSION of the
+     * format of Codec.
+     * @param in source.
+     * @param version version of the format. */
+    static StagingArea decode(Codec.Input in, int version) {
+        return new StagingArea(in, version);
+    }
+
+    /** Writes the four maps of the staging area to OUT, for Codec.
+     * @param out destination. */
+    void encode(Codec.Output out) {
+        out.writeIdMap(_added);
+        out.writeIdMap(_removed);
+        out.writeIdMap(_removing);
+        out.writeIdMap(_tracked);
+    }
+
+    /** Returns HashMap<String, String> of files
      * staged for commit (add). */
-    public HashMap<String, Blob> getAdded() {
+    public HashMap<String, String> getAdded() {
         return _added;
     }
 
-    /** Returns HashMap<String, Blob>
+    /** Returns HashMap<String, String>
      *  of files removed (rm). */
-    public HashMap<String, Blob> getRemoved() {
+    public HashMap<String, String> getRemoved() {
         return _removed;
     }
 
-    /** Returns HashMap<String, Blob>
+    /** Returns HashMap<String, String>
      *  of files staged for removal (rm). */
-    public HashMap<String, Blob> getRemoving() {
+    public HashMap<String, String> getRemoving() {
         return _removing;
     }
 
-    /** Returns HashMap<String, Blob> of files in wd that are tracked in latest
-     * commit. */
-    public HashMap<String, Blob> getTracked() {
+    /** Returns HashMap<String, String> of files in wd that are tracked in
+     * latest commit. */
+    public HashMap<String, String> getTracked() {
         return _tracked;
     }
 
-    /** Sets HashMap<String, Blob> of files in wd that are
+    /** Sets HashMap<String, String> of files in wd that are
      * tracked in latest commit.
      * @param tracked .*/
-    public void setTracked(HashMap<String, Blob> tracked) {
+    public void setTracked(HashMap<String, String> tracked) {
         _tracked = tracked;
     }
 
     /** Adds copy of file to staging area, overwriting previously staged files.
             * @param fileName string of name of file to be added.
-     * @param blob blob of content of file to be added. */
-    public void remove(String fileName, Blob blob) {
+     * @param blobId ID of blob of content of file to be removed. */
+    public void remove(String fileName, String blobId) {
         if (_added.containsKey(fileName)) {
             _added.remove(fileName);
         }
         Commit lastCommit = Main.getCommitTree().getLastCommit();
         if (lastCommit.getBlobs().containsKey(fileName)
                 || _tracked.containsKey(fileName)) {
-            _removing.put(fileName, blob);
+            _removing.put(fileName, blobId);
             File file = new File(System.getProperty("user.dir"), fileName);
             if (file.exists()) {
                 Utils.join(System.getProperty("user.dir"), fileName).delete();
@@ -74,21 +108,24 @@ public class StagingArea implements Serializable {
 
     /** Adds copy of file to staging area, overwriting previously staged files.
      * @param fileName string of name of file to be added.
-     * @param blob blob of content of file to be added. */
-    public void add(String fileName, Blob blob) {
+     * @param blobId ID of blob of content of file to be added. */
+    public void add(String fileName, String blobId) {
         if (_added.containsKey(fileName)) {
-            if (!_added.get(fileName).getBlobId().equals(blob.getBlobId())) {
+            if (!_added.get(fileName).equals(blobId)) {
                 _added.remove(fileName);
-                _added.put(fileName, blob);
+                _added.put(fileName, blobId);
             }
         } else {
-            _added.put(fileName, blob);
+            _added.put(fileName, blobId);
         }
     }
 
     /** Displays what branches exist, files staged for addition/removal,
-     * modifications not staged for commit [EC], and untracked files [EC]. */
-    public void status() {
+     * modifications not staged for commit [EC], and untracked files [EC].
+     * If RENAMES, a staged file renamed or copied from another is followed
+     * by "(renamed from [file name])" or "(copied from [file name])".
+     * @param renames true if renamed and copied files are to be marked. */
+    public void status(boolean renames) {
         ArrayList<String> sortedBranches = new ArrayList<>(
                 Main.getCommitTree().getBranches().keySet());
         Collections.sort(sortedBranches);
@@ -104,9 +141,16 @@ public class StagingArea implements Serializable {
         ArrayList<String> sortedAdded = new ArrayList<>(
                 _added.keySet());
         Collections.sort(sortedAdded);
+        TreeMap<String, String> origins = renames ? origins()
+                : new TreeMap<>();
         System.out.println("=== Staged Files ===");
         for (String fileName : sortedAdded) {
-            System.out.println(fileName);
+            if (origins.containsKey(fileName)) {
+                System.out.println(fileName + " ("
+                        + origins.get(fileName) + ")");
+            } else {
+                System.out.println(fileName);
+            }
         }
         System.out.println();
         ArrayList<String> sortedRemoving = new ArrayList<>(
@@ -132,23 +176,70 @@ public class StagingArea implements Serializable {
         }
     }
 
+    /** Returns a map from each new file staged for addition that was
+     * renamed or copied from another file to where it came from, as
+     * "renamed from [file name]" or "copied from [file name]". A new file
+     * is renamed from a file staged for removal, and copied from a file
+     * staged with changes, if similar enough, or from any other if
+     * identical to it. */
+    private TreeMap<String, String> origins() {
+        TreeMap<String, String> origins = new TreeMap<>();
+        if (_added.isEmpty()) {
+            return origins;
+        }
+        Commit lastCommit = Main.getCommitTree().getLastCommit();
+        HashMap<String, String> created = new HashMap<>();
+        HashMap<String, String> modified = new HashMap<>();
+        for (Map.Entry<String, String> entry : _added.entrySet()) {
+            String before = lastCommit.getBlobId(entry.getKey());
+            if (before == null) {
+                created.put(entry.getKey(), entry.getValue());
+            } else if (!before.equals(entry.getValue())) {
+                modified.put(entry.getKey(), before);
+            }
+        }
+        if (created.isEmpty()) {
+            return origins;
+        }
+        for (Map.Entry<String, String> entry
+                 : Renames.find(_removing, created).entrySet()) {
+            origins.put(entry.getKey(), "renamed from " + entry.getValue());
+            created.remove(entry.getKey());
+        }
+        HashMap<String, String> unchanged = new HashMap<>(
+                lastCommit.getBlobs());
+        unchanged.keySet().removeAll(_removing.keySet());
+        unchanged.keySet().removeAll(modified.keySet());
+        for (Map.Entry<String, String> entry
+                 : Renames.findCopies(unchanged, modified, created)
+                       .entrySet()) {
+            origins.put(entry.getKey(), "copied from " + entry.getValue());
+        }
+        return origins;
+    }
+
     /** Finds files in cwd with modifications not staged for commit.
+     * Files outside the sparse-checkout patterns are not considered.
      * @return ArrayList<String> */
     public ArrayList<String> statusModified() {
         Commit lastCommit = Main.getCommitTree().getLastCommit();
         ArrayList<String> mod = new ArrayList<>();
-        List<String> workingDirectoryFiles = Utils.plainFilenamesIn
-                (System.getProperty("user.dir"));
-        assert workingDirectoryFiles != null;
+        Sparse sparse = Main.getSparse();
+        List<String> listed = sparse.workingFiles();
+        Main.getStatCache().retain(listed);
+        TreeMap<String, String> cwdBlobs =
+                Main.getStatCache().blobIds(listed);
+        List<String> workingDirectoryFiles =
+                new ArrayList<>(cwdBlobs.keySet());
         for (String fileName: workingDirectoryFiles) {
-            Blob cwdBlob = new Blob(fileName);
+            String cwdBlob = cwdBlobs.get(fileName);
             if (lastCommit.getBlobs().containsKey(fileName)
                     || _tracked.containsKey(fileName)) {
-                if (!lastCommit.getBlob(fileName).getBlobId().equals(
-                        cwdBlob.getBlobId())) {
+                if (!cwdBlob.equals(
+                        lastCommit.getBlobId(fileName))) {
                     if (_added.containsKey(fileName)) {
-                        if (!_added.get(fileName).getBlobId().equals(
-                                cwdBlob.getBlobId())) {
+                        if (!_added.get(fileName).equals(
+                                cwdBlob)) {
                             mod.add(fileName + " (modified)");
                         }
                     } else {
@@ -156,14 +247,17 @@ public class StagingArea implements Serializable {
                     }
                 }
             } else if (_added.containsKey(fileName)) {
-                if (!_added.get(fileName).getBlobId().equals(
-                        cwdBlob.getBlobId())) {
+                if (!_added.get(fileName).equals(
+                        cwdBlob)) {
                     mod.add(fileName + " (modified)");
                 }
             }
         }
 
         for (String fileName: _added.keySet()) {
+            if (!sparse.includes(fileName)) {
+                continue;
+            }
             if (!workingDirectoryFiles.contains(fileName)
                     || _removed.containsKey(fileName)) {
                 mod.add(fileName + " (modified)");
@@ -178,6 +272,7 @@ public class StagingArea implements Serializable {
         }
         for (String fileName: lastCommit.getBlobs().keySet()) {
             if (!workingDirectoryFiles.contains(fileName)
+                    && sparse.includes(fileName)
                     && !_removing.containsKey(fileName)
                     && !_added.containsKey(fileName)) {
                 mod.add(fileName + " (deleted)");
@@ -186,12 +281,12 @@ public class StagingArea implements Serializable {
         return mod;
     }
 
-    /** Finds files in cwd that are untracked.
+    /** Finds files in cwd that are untracked, ignoring those outside the
+     * sparse-checkout patterns.
      * @return Arraylist<String> of file names. */
     public ArrayList<String> statusUntracked() {
         ArrayList<String> untracked = new ArrayList<>();
-        List<String> workingDirectoryFiles = Utils.plainFilenamesIn
-                (System.getProperty("user.dir"));
+        List<String> workingDirectoryFiles = Main.getSparse().workingFiles();
         for (String fileName : workingDirectoryFiles) {
             if (!_added.containsKey(fileName)
                     && !_tracked.containsKey(fileName)) {
@@ -203,18 +298,18 @@ public class StagingArea implements Serializable {
         return untracked;
     }
 
-    /** HashMap<String, Blob> of files staged for commit (add).*/
-    private HashMap<String, Blob> _added;
+    /** HashMap<String, String> of files staged for commit (add).*/
+    private HashMap<String, String> _added;
 
-    /** HashMap<String, Blob> of files removed (rm).*/
-    private HashMap<String, Blob> _removed;
+    /** HashMap<String, String> of files removed (rm).*/
+    private HashMap<String, String> _removed;
 
-    /** HashMap<String, Blob> of files staged for removal (rm).*/
-    private HashMap<String, Blob> _removing;
+    /** HashMap<String, String> of files staged for removal (rm).*/
+    private HashMap<String, String> _removing;
 
-    /** HashMap<String, Blob> of files in wd that are tracked in latest
+    /** HashMap<String, String> of files in wd that are tracked in latest
      * commit.*/
-    private HashMap<String, Blob> _tracked;
+    private HashMap<String, String> _tracked;
 
 }
 
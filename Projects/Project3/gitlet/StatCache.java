@@ -0,0 +1,320 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/** Persistent cache of the blob IDs of files in the working directory,
+ *  kept in .gitlet/index. Each entry records the size, modification time
+ *  and file key (device and inode) a file had when it was hashed, so a
+ *  file whose metadata has not changed since need not be read again.
+ *
+ *  As in git, an entry whose modification time is no earlier than the
+ *  second in which the cache was last written is "racily clean": the file
+ *  might have been changed again within the same clock tick, so it is
+ *  always rehashed.
+ *
+ *  Files that do have to be read are hashed in parallel, on a bounded
+ *  number of threads; results are returned in sorted order regardless.
+ *  @author Ayela Chughtai
+ */
+class StatCache implements Serializable {
+
+    /** Serialization version of the class, fixed so that stat caches
+     * written by Java serialization before Codec can still be read. */
+    private static final long serialVersionUID = -6056286613039724992L;
+
+    /** Largest number of files hashed at once. */
+    static final int HASH_THREADS = 16;
+
+    /** Constructor of the stat cache class. */
+    StatCache() {
+        _entries = new HashMap<>();
+    }
+
+    /** Returns the stat cache stored in FILE, or an empty one if there is
+     * none.
+     * @param file file holding the cache. */
+    static StatCache read(File file) {
+        if (!file.isFile()) {
+            return new StatCache();
+        }
+        return Codec.read(file, StatCache.class);
+    }
+
+    /** Writes this cache to FILE if it has changed since it was read.
+     * @param file file holding the cache. */
+    void write(File file) {
+        if (!_dirty) {
+            return;
+        }
+        _writeTime = System.currentTimeMillis();
+        Codec.write(file, this);
+        _dirty = false;
+    }
+
+    /** Returns the stat cache encoded in IN in version VERSION of the
+     * format of Codec.
+     * @param in source.
+     * @param version version of the format. */
+    static StatCache decode(Codec.Input in, int version) {
+        StatCache cache = new StatCache();
+        cache._writeTime = in.readLong();
+        for (long n = in.readNumber(); n > 0; n -= 1) {
+            String fileName = in.readString();
+            long size = in.readNumber();
+            long mtime = in.readNumber();
+            String key = in.readString();
+            cache._entries.put(fileName,
+                    new Entry(size, mtime, key, in.readId()));
+        }
+        return cache;
+    }
+
+    /** Writes the time the cache was written and its entries to OUT, for
+     * Codec.
+     * @param out destination. */
+    void encode(Codec.Output out) {
+        out.writeLong(_writeTime);
+        out.writeNumber(_entries.size());
+        for (Map.Entry<String, Entry> entry : _entries.entrySet()) {
+            Entry value = entry.getValue();
+            out.writeString(entry.getKey());
+            out.writeNumber(value._size);
+            out.writeNumber(value._mtime);
+            out.writeString(value._key);
+            out.writeId(value._blobId);
+        }
+    }
+
+    /** Returns the blob ID of the working file FILENAME, reading and
+     * hashing it only if it may have changed since it was last hashed.
+     * @param fileName name of the file. */
+    String blobId(String fileName) {
+        return blobIds(Collections.singletonList(fileName)).get(fileName);
+    }
+
+    /** Returns the blob ID of the working file FILENAME, making sure that
+     * the blob is in the object store.
+     * @param fileName name of the file. */
+    String store(String fileName) {
+        return store(Collections.singletonList(fileName)).get(fileName);
+    }
+
+    /** Returns a map from each of the working files FILENAMES to its blob
+     * ID, hashing in parallel those that may have changed since they were
+     * last hashed.
+     * @param fileNames names of the files. */
+    TreeMap<String, String> blobIds(List<String> fileNames) {
+        return hashAll(fileNames, false);
+    }
+
+    /** Returns a map from each of the working files FILENAMES to its blob
+     * ID, making sure that all of the blobs are in the object store.
+     * @param fileNames names of the files. */
+    TreeMap<String, String> store(List<String> fileNames) {
+        return hashAll(fileNames, true);
+    }
+
+    /** Returns a map from each of FILENAMES to its blob ID. Files whose
+     * cached entries are still valid are not read; the rest are hashed,
+     * and also stored if STORE, on at most HASH_THREADS threads. Each new
+     * entry holds the metadata the file had before it was read, so a
+     * change made while hashing is seen the next time. Files that can no
+     * longer be found, such as one deleted since it was listed, are taken
+     * to be deleted: they are left out of the map and dropped from the
+     * cache.
+     * @param fileNames names of the files.
+     * @param store whether the blobs must be in the object store. */
+    private TreeMap<String, String> hashAll(List<String> fileNames,
+                                            boolean store) {
+        TreeMap<String, String> result = new TreeMap<>();
+        ArrayList<String> misses = new ArrayList<>();
+        ArrayList<Entry> stats = new ArrayList<>();
+        for (String fileName : fileNames) {
+            Entry entry = _entries.get(fileName);
+            Entry now = stat(fileName, null);
+            if (now == null) {
+                if (entry != null) {
+                    _entries.remove(fileName);
+                    _dirty = true;
+                }
+                continue;
+            }
+            if (entry != null && entry.sameStat(now)
+                    && !isRacy(entry) && (!store
+                    || Main.getObjectStore().contains(entry._blobId))) {
+                result.put(fileName, entry._blobId);
+            } else {
+                misses.add(fileName);
+                stats.add(now);
+            }
+        }
+        List<String> hashed = hash(misses, store);
+        for (int i = 0; i < misses.size(); i += 1) {
+            Entry now = stats.get(i);
+            result.put(misses.get(i), hashed.get(i));
+            _entries.put(misses.get(i), new Entry(now._size, now._mtime,
+                    now._key, hashed.get(i)));
+            _dirty = true;
+        }
+        return result;
+    }
+
+    /** Returns the blob IDs of FILENAMES, in the same order, hashing the
+     * files in parallel and also storing them if STORE.
+     * @param fileNames names of the files.
+     * @param store whether to write the blobs to the object store. */
+    private static List<String> hash(List<String> fileNames,
+                                     boolean store) {
+        if (fileNames.size() < 2) {
+            ArrayList<String> ids = new ArrayList<>();
+            for (String fileName : fileNames) {
+                ids.add(new Blob(fileName, store).getBlobId());
+            }
+            return ids;
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.min(HASH_THREADS,
+                Runtime.getRuntime().availableProcessors()));
+        try {
+            return pool.submit(() -> fileNames.parallelStream()
+                    .map(fileName -> new Blob(fileName, store).getBlobId())
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Records that the working file FILENAME, as it is now, has contents
+     * with ID BLOBID.
+     * @param fileName name of the file.
+     * @param blobId ID of its contents. */
+    void record(String fileName, String blobId) {
+        Entry entry = stat(fileName, blobId);
+        if (entry == null) {
+            _dirty |= _entries.remove(fileName) != null;
+        } else if (!entry.equals(_entries.get(fileName))) {
+            _entries.put(fileName, entry);
+            _dirty = true;
+        }
+    }
+
+    /** Forgets all entries except those for NAMES.
+     * @param names names of the files still in the working directory. */
+    void retain(Collection<String> names) {
+        HashSet<String> keep = new HashSet<>(names);
+        _dirty |= _entries.keySet().removeIf(name -> !keep.contains(name));
+    }
+
+    /** Returns true if ENTRY may not reflect a change made to its file in
+     * the same clock tick in which the cache was written.
+     * @param entry cache entry. */
+    private boolean isRacy(Entry entry) {
+        return TimeUnit.NANOSECONDS.toSeconds(entry._mtime)
+                >= TimeUnit.MILLISECONDS.toSeconds(_writeTime);
+    }
+
+    /** Returns an entry holding the current metadata of FILENAME and
+     * BLOBID, or null if there is no such plain file.
+     * @param fileName name of the file.
+     * @param blobId ID of its contents. */
+    private static Entry stat(String fileName, String blobId) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(
+                    new File(fileName).toPath(), BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            return new Entry(attrs.size(),
+                    attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    String.valueOf(attrs.fileKey()), blobId);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** The cached metadata and blob ID of one file. */
+    private static class Entry implements Serializable {
+
+        /** Serialization version of the class, fixed as for its
+         * enclosing class. */
+        private static final long serialVersionUID =
+                -6112381499888782534L;
+
+        /** An entry for a file of SIZE bytes last modified at MTIME, with
+         * file key KEY and contents BLOBID.
+         * @param size length in bytes.
+         * @param mtime modification time in nanoseconds.
+         * @param key device and inode of the file.
+         * @param blobId ID of the contents. */
+        Entry(long size, long mtime, String key, String blobId) {
+            _size = size;
+            _mtime = mtime;
+            _key = key;
+            _blobId = blobId;
+        }
+
+        /** Returns true if OTHER has the same size, modification time
+         * and file key as this entry.
+         * @param other entry. */
+        boolean sameStat(Entry other) {
+            return _size == other._size && _mtime == other._mtime
+                    && _key.equals(other._key);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Entry && sameStat((Entry) obj)
+                    && _blobId.equals(((Entry) obj)._blobId);
+        }
+
+        @Override
+        public int hashCode() {
+            return _blobId.hashCode();
+        }
+
+        /** Length of the file in bytes. */
+        private long _size;
+
+        /** Modification time of the file in nanoseconds. */
+        private long _mtime;
+
+        /** Device and inode of the file. */
+        private String _key;
+
+        /** ID of the contents of the file. */
+        private String _blobId;
+    }
+
+    /** Map from file names to cache entries. */
+    private HashMap<String, Entry> _entries;
+
+    /** Time in milliseconds at which the cache was last written. */
+    private long _writeTime;
+
+    /** True if the cache has changed since it was read. */
+    private transient boolean _dirty;
+
+}
@@ -0,0 +1,266 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Opt-in tracing of a Gitlet command, enabled by setting the environment
+ *  variable GITLET_TRACE to 1 or by giving --profile before the command.
+ *
+ *  Code to be timed is wrapped in a span named for its phase. For each
+ *  phase the trace sums the number of calls, the wall time and the bytes
+ *  allocated by the thread running it. Phases may nest, and each includes
+ *  the time of those within it. Counters record the bytes read, written
+ *  and hashed, and the objects read from and written to the object store.
+ *
+ *  When the command exits, by whatever path, a table of the phases and
+ *  counters is printed to the standard error. If GITLET_TRACE_FILE names a
+ *  file, the same summary is also appended to it as one line of JSON, for
+ *  comparing runs. While tracing is off, a span costs one test of a flag.
+ *  @author Ayela Chughtai
+ */
+class Trace {
+
+    /** Environment variable enabling tracing when set to 1. */
+    static final String TRACE_ENV = "GITLET_TRACE";
+
+    /** Environment variable naming a file to which JSON summaries are
+     * appended. */
+    static final String FILE_ENV = "GITLET_TRACE_FILE";
+
+    /** Option enabling tracing, given before the command. */
+    static final String PROFILE_FLAG = "--profile";
+
+    /** Counter of bytes read from files. */
+    static final String BYTES_READ = "bytesRead";
+
+    /** Counter of bytes written to files. */
+    static final String BYTES_WRITTEN = "bytesWritten";
+
+    /** Counter of bytes hashed. */
+    static final String BYTES_HASHED = "bytesHashed";
+
+    /** Counter of objects read from the object store. */
+    static final String OBJECTS_READ = "objectsRead";
+
+    /** Counter of objects written to the object store. */
+    static final String OBJECTS_WRITTEN = "objectsWritten";
+
+    /** A span that records nothing, returned while tracing is off. */
+    private static final Span NONE = new Span(null);
+
+    /** Phases traced so far, by name. */
+    private static final ConcurrentHashMap<String, Phase> PHASES =
+            new ConcurrentHashMap<>();
+
+    /** Counters, by name. */
+    private static final ConcurrentHashMap<String, LongAdder> COUNTERS =
+            new ConcurrentHashMap<>();
+
+    /** Starts tracing the command given by ARGS if tracing is enabled,
+     * and returns ARGS without the --profile option.
+     * @param args arguments of Main. */
+    static String[] start(String[] args) {
+        boolean profile = args.length > 0 && args[0].equals(PROFILE_FLAG);
+        if (profile) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if (!_enabled && (profile || "1".equals(System.getenv(TRACE_ENV)))) {
+            _enabled = true;
+            _command = span("command");
+            String name = args.length > 0 ? args[0] : "";
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                _command.close();
+                report(name);
+            }));
+        }
+        return args;
+    }
+
+    /** Ends the span of the whole command, if tracing, when it returns
+     * normally rather than exiting. */
+    static void stop() {
+        if (_command != null) {
+            _command.close();
+        }
+    }
+
+    /** Returns a span timing the phase PHASE from now until it is
+     * closed.
+     * @param phase name of the phase. */
+    static Span span(String phase) {
+        return _enabled ? new Span(phase) : NONE;
+    }
+
+    /** Adds AMOUNT to the counter COUNTER.
+     * @param counter name of the counter.
+     * @param amount amount to be added. */
+    static void add(String counter, long amount) {
+        if (_enabled) {
+            COUNTERS.computeIfAbsent(counter, c -> new LongAdder())
+                    .add(amount);
+        }
+    }
+
+    /** Returns the bytes allocated so far by the thread with ID THREAD,
+     * or -1 if the thread has ended or the JVM does not count them.
+     * @param thread ID of a thread. */
+    private static long allocated(long thread) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(thread);
+        }
+        return -1;
+    }
+
+    /** Prints the summary of COMMAND to the standard error, and appends
+     * it as JSON to the file named by GITLET_TRACE_FILE, if any.
+     * @param command name of the command. */
+    private static void report(String command) {
+        TreeMap<String, Phase> phases = new TreeMap<>(PHASES);
+        TreeMap<String, LongAdder> counters = new TreeMap<>(COUNTERS);
+        System.err.printf("gitlet %s%n", command);
+        System.err.printf("%-16s %8s %12s %14s%n", "phase", "calls",
+                "time (ms)", "allocated (B)");
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            Phase phase = entry.getValue();
+            System.err.printf("%-16s %8d %12.3f %14d%n", entry.getKey(),
+                    phase._calls.sum(), phase._nanos.sum() / 1e6,
+                    phase._allocated.sum());
+        }
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            System.err.printf("%-16s %8d%n", entry.getKey(),
+                    entry.getValue().sum());
+        }
+        String file = System.getenv(FILE_ENV);
+        if (file == null || file.isEmpty()) {
+            return;
+        }
+        StringBuilder json = new StringBuilder();
+        json.append("{\"command\":").append(quote(command))
+            .append(",\"time\":").append(System.currentTimeMillis())
+            .append(",\"phases\":{");
+        String sep = "";
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            Phase phase = entry.getValue();
+            json.append(sep).append(quote(entry.getKey()))
+                .append(":{\"calls\":").append(phase._calls.sum())
+                .append(",\"nanos\":").append(phase._nanos.sum())
+                .append(",\"allocatedBytes\":")
+                .append(phase._allocated.sum()).append('}');
+            sep = ",";
+        }
+        json.append("},\"counters\":{");
+        sep = "";
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            json.append(sep).append(quote(entry.getKey())).append(':')
+                .append(entry.getValue().sum());
+            sep = ",";
+        }
+        json.append("}}\n");
+        try {
+            Files.write(new File(file).toPath(),
+                    json.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            System.err.println("cannot write trace: " + excp.getMessage());
+        }
+    }
+
+    /** Returns S as a JSON string.
+     * @param s a string. */
+    private static String quote(String s) {
+        StringBuilder result = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < ' ') {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    /** A phase being timed. Allocation is counted on the thread that
+     * started it, even if another thread closes it. */
+    static class Span implements AutoCloseable {
+
+        /** Starts timing PHASE, or nothing if PHASE is null.
+         * @param phase name of the phase, or null. */
+        private Span(String phase) {
+            _phase = phase;
+            if (phase != null) {
+                _thread = Thread.currentThread().getId();
+                _allocatedStart = allocated(_thread);
+                _start = System.nanoTime();
+            }
+        }
+
+        /** Adds the time and allocation since this span started to its
+         * phase. Only the first call has any effect. */
+        @Override
+        public void close() {
+            if (_phase == null || _closed) {
+                return;
+            }
+            _closed = true;
+            long nanos = System.nanoTime() - _start;
+            Phase phase = PHASES.computeIfAbsent(_phase, p -> new Phase());
+            phase._calls.increment();
+            phase._nanos.add(nanos);
+            long allocated = allocated(_thread);
+            if (allocated >= 0 && _allocatedStart >= 0) {
+                phase._allocated.add(allocated - _allocatedStart);
+            }
+        }
+
+        /** Name of the phase, or null if this span records nothing. */
+        private final String _phase;
+
+        /** ID of the thread that started the span. */
+        private long _thread;
+
+        /** Value of System.nanoTime when the span started. */
+        private long _start;
+
+        /** Bytes allocated by the thread when the span started. */
+        private long _allocatedStart;
+
+        /** True once the span has been closed. */
+        private boolean _closed;
+
+    }
+
+    /** Totals for one phase. */
+    private static class Phase {
+
+        /** Number of spans closed. */
+        private final LongAdder _calls = new LongAdder();
+
+        /** Total wall time, in nanoseconds. */
+        private final LongAdder _nanos = new LongAdder();
+
+        /** Total bytes allocated. */
+        private final LongAdder _allocated = new LongAdder();
+
+    }
+
+    /** Span of the whole command, or null if not tracing. */
+    private static volatile Span _command;
+
+    /** True if tracing is on. */
+    private static volatile boolean _enabled;
+
+}
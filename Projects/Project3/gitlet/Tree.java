@@ -0,0 +1,375 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** Tree objects for Gitlet: the files tracked by a commit, as a map from
+ *  file names to blob IDs. Gitlet tracks a single flat directory, so
+ *  rather than following directories, a tree is a hash trie: the node at
+ *  depth D sorts the names below it by the Dth hex digit of their SHA-1
+ *  hash into FANOUT subtrees. A node holding no more than MAX_LEAF names
+ *  is instead a leaf listing them directly.
+ *
+ *  Nodes are immutable and stored in the object store under the hash of
+ *  their contents, so trees that share files share the nodes holding
+ *  them. Changing a file writes only the nodes on the path to it, and
+ *  comparing two trees skips every subtree whose ID they have in common.
+ *  The shape of a trie depends only on the names in it, so equal trees
+ *  always have equal IDs.
+ *  @author Ayela Chughtai
+ */
+class Tree implements Serializable {
+
+    /** Serialization version of the class, fixed so that tree nodes
+     * written by Java serialization before Codec can still be read. */
+    private static final long serialVersionUID = 2354586259273924900L;
+
+    /** Largest number of files held by a leaf. */
+    static final int MAX_LEAF = 256;
+
+    /** Number of subtrees of an inner node. */
+    static final int FANOUT = 16;
+
+    /** Largest number of nodes kept in CACHE. */
+    static final int CACHE_SIZE = 2048;
+
+    /** The CACHE_SIZE nodes read most recently, by ID. Bounded, so that
+     * a daemon serving the repository for a long time does not keep
+     * every node it has ever read, including those deleted by gc. */
+    private static final Map<String, Tree> CACHE =
+            Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, Tree> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    /** A leaf holding ENTRIES.
+     * @param entries map from file names to blob IDs. */
+    private Tree(TreeMap<String, String> entries) {
+        _entries = entries;
+        _size = entries.size();
+    }
+
+    /** An inner node with the given subtrees.
+     * @param children IDs of the subtrees, null where empty.
+     * @param sizes numbers of files in the subtrees. */
+    private Tree(String[] children, int[] sizes) {
+        _children = children;
+        _sizes = sizes;
+        for (int size : sizes) {
+            _size += size;
+        }
+    }
+
+    /** Returns the node encoded in IN in version VERSION of the format of
+     * Codec.
+     * @param in source.
+     * @param version version of the format. */
+    static Tree decode(Codec.Input in, int version) {
+        if (in.readBoolean()) {
+            return new Tree(in.readIdMap(new TreeMap<>()));
+        }
+        String[] children = new String[FANOUT];
+        int[] sizes = new int[FANOUT];
+        for (int d = 0; d < FANOUT; d += 1) {
+            children[d] = in.readId();
+            sizes[d] = (int) in.readNumber();
+        }
+        return new Tree(children, sizes);
+    }
+
+    /** Writes this node to OUT, for Codec: a leaf as its entries in
+     * order, an inner node as the ID and size of each subtree.
+     * @param out destination. */
+    void encode(Codec.Output out) {
+        out.writeBoolean(_entries != null);
+        if (_entries != null) {
+            out.writeIdMap(_entries);
+            return;
+        }
+        for (int d = 0; d < FANOUT; d += 1) {
+            out.writeId(_children[d]);
+            out.writeNumber(_sizes[d]);
+        }
+    }
+
+    /** Returns the ID of the empty tree, storing it if need be. */
+    static String empty() {
+        return new Tree(new TreeMap<>()).write();
+    }
+
+    /** Returns the blob ID of FILENAME in the tree with ID TREEID, or
+     * null if it has none.
+     * @param treeId ID of a tree.
+     * @param fileName name of a file. */
+    static String get(String treeId, String fileName) {
+        String hash = Utils.sha1(fileName);
+        for (int depth = 0; treeId != null; depth += 1) {
+            Tree node = read(treeId);
+            if (node._entries != null) {
+                return node._entries.get(fileName);
+            }
+            treeId = node._children[digit(hash, depth)];
+        }
+        return null;
+    }
+
+    /** Returns all the files of the tree with ID TREEID, as a map from
+     * file names to blob IDs.
+     * @param treeId ID of a tree. */
+    static HashMap<String, String> entries(String treeId) {
+        HashMap<String, String> result = new HashMap<>();
+        collect(treeId, result);
+        return result;
+    }
+
+    /** Adds to REACHED the IDs of the nodes of the tree with ID TREEID and
+     * of the blobs in it. Subtrees already in REACHED are skipped, so
+     * nodes shared by many trees are visited once.
+     * @param treeId ID of a tree.
+     * @param reached IDs of the objects reached so far. */
+    static void reachable(String treeId, Set<String> reached) {
+        if (treeId == null || !reached.add(treeId)) {
+            return;
+        }
+        Tree node = read(treeId);
+        if (node._entries != null) {
+            reached.addAll(node._entries.values());
+        } else {
+            for (String child : node._children) {
+                reachable(child, reached);
+            }
+        }
+    }
+
+    /** Adds to MISSING the IDs of the nodes of the tree with ID TREEID in
+     * FROM, and of the blobs in it, that are not in the object store TO.
+     * A node that TO has is skipped along with everything below it,
+     * since a store never holds a node without its contents.
+     * @param treeId ID of a tree in FROM.
+     * @param from object store holding the tree.
+     * @param to object store being compared with.
+     * @param missing IDs of the objects found missing so far. */
+    static void missing(String treeId, ObjectStore from, ObjectStore to,
+                        Set<String> missing) {
+        if (treeId == null || missing.contains(treeId)
+                || to.contains(treeId)) {
+            return;
+        }
+        missing.add(treeId);
+        Tree node = read(from, treeId);
+        if (node._entries != null) {
+            for (String blobId : node._entries.values()) {
+                if (!missing.contains(blobId) && !to.contains(blobId)) {
+                    missing.add(blobId);
+                }
+            }
+        } else {
+            for (String child : node._children) {
+                missing(child, from, to, missing);
+            }
+        }
+    }
+
+    /** Returns the ID of the tree made from the tree with ID TREEID by
+     * applying CHANGES, storing any new nodes.
+     * @param treeId ID of a tree.
+     * @param changes map from file names to their new blob IDs, or to
+     *                null for files removed. */
+    static String update(String treeId, SortedMap<String, String> changes) {
+        if (changes.isEmpty()) {
+            return treeId;
+        }
+        return update(read(treeId), changes, 0).write();
+    }
+
+    /** Adds to CHANGED the names of the files whose blob IDs differ
+     * between the trees with IDs A and B.
+     * @param a ID of a tree, or null for the empty tree.
+     * @param b ID of a tree, or null for the empty tree.
+     * @param changed collection receiving the names. */
+    static void diff(String a, String b, Collection<String> changed) {
+        if (a != null && a.equals(b)) {
+            return;
+        }
+        Tree x = read(a);
+        Tree y = read(b);
+        if (x._children != null && y._children != null) {
+            for (int d = 0; d < FANOUT; d += 1) {
+                diff(x._children[d], y._children[d], changed);
+            }
+            return;
+        }
+        HashMap<String, String> before = entries(a);
+        HashMap<String, String> after = entries(b);
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            if (!entry.getValue().equals(before.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String fileName : before.keySet()) {
+            if (!after.containsKey(fileName)) {
+                changed.add(fileName);
+            }
+        }
+    }
+
+    /** Returns the node made from NODE, at depth DEPTH, by applying
+     * CHANGES, which all belong below it. New nodes are stored.
+     * @param node a node.
+     * @param changes changes to files below the node.
+     * @param depth depth of the node. */
+    private static Tree update(Tree node, SortedMap<String, String> changes,
+                               int depth) {
+        if (node._entries != null) {
+            TreeMap<String, String> entries = new TreeMap<>(node._entries);
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    entries.remove(change.getKey());
+                } else {
+                    entries.put(change.getKey(), change.getValue());
+                }
+            }
+            return build(entries, depth);
+        }
+        List<TreeMap<String, String>> parts = partition(changes, depth);
+        String[] children = node._children.clone();
+        int[] sizes = node._sizes.clone();
+        for (int d = 0; d < FANOUT; d += 1) {
+            if (parts.get(d).isEmpty()) {
+                continue;
+            }
+            Tree child = update(read(children[d]), parts.get(d), depth + 1);
+            sizes[d] = child._size;
+            children[d] = child._size == 0 ? null : child.write();
+        }
+        Tree result = new Tree(children, sizes);
+        if (result._size <= MAX_LEAF) {
+            TreeMap<String, String> entries = new TreeMap<>();
+            for (String child : children) {
+                collect(child, entries);
+            }
+            return new Tree(entries);
+        }
+        return result;
+    }
+
+    /** Returns a node at depth DEPTH holding ENTRIES, storing any
+     * subtrees it needs.
+     * @param entries map from file names to blob IDs.
+     * @param depth depth of the node. */
+    private static Tree build(TreeMap<String, String> entries, int depth) {
+        if (entries.size() <= MAX_LEAF) {
+            return new Tree(entries);
+        }
+        List<TreeMap<String, String>> parts = partition(entries, depth);
+        String[] children = new String[FANOUT];
+        int[] sizes = new int[FANOUT];
+        for (int d = 0; d < FANOUT; d += 1) {
+            if (!parts.get(d).isEmpty()) {
+                children[d] = build(parts.get(d), depth + 1).write();
+                sizes[d] = parts.get(d).size();
+            }
+        }
+        return new Tree(children, sizes);
+    }
+
+    /** Returns ENTRIES split into FANOUT maps by the digit of the hash of
+     * each name at depth DEPTH.
+     * @param entries map from file names to values.
+     * @param depth depth of the node being split. */
+    private static List<TreeMap<String, String>> partition(
+            SortedMap<String, String> entries, int depth) {
+        ArrayList<TreeMap<String, String>> parts = new ArrayList<>();
+        for (int d = 0; d < FANOUT; d += 1) {
+            parts.add(new TreeMap<>());
+        }
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            parts.get(digit(Utils.sha1(entry.getKey()), depth))
+                    .put(entry.getKey(), entry.getValue());
+        }
+        return parts;
+    }
+
+    /** Adds all the files of the tree with ID TREEID to RESULT.
+     * @param treeId ID of a tree, or null for the empty tree.
+     * @param result map receiving the files. */
+    private static void collect(String treeId, Map<String, String> result) {
+        if (treeId == null) {
+            return;
+        }
+        Tree node = read(treeId);
+        if (node._entries != null) {
+            result.putAll(node._entries);
+        } else {
+            for (String child : node._children) {
+                collect(child, result);
+            }
+        }
+    }
+
+    /** Returns the digit of HASH used at depth DEPTH.
+     * @param hash SHA-1 hash of a file name.
+     * @param depth depth of a node. */
+    private static int digit(String hash, int depth) {
+        return Character.digit(hash.charAt(depth), FANOUT);
+    }
+
+    /** Returns the node with ID TREEID, or an empty leaf if TREEID is
+     * null.
+     * @param treeId ID of a node, or null. */
+    private static Tree read(String treeId) {
+        return read(Main.getObjectStore(), treeId);
+    }
+
+    /** Returns the node with ID TREEID in STORE, or an empty leaf if
+     * TREEID is null. Nodes never change, and are named by their
+     * contents, so a node still in CACHE is not read again, whatever
+     * store holds it.
+     * @param store object store holding the node.
+     * @param treeId ID of a node, or null. */
+    private static Tree read(ObjectStore store, String treeId) {
+        if (treeId == null) {
+            return new Tree(new TreeMap<>());
+        }
+        Tree tree = CACHE.get(treeId);
+        if (tree == null) {
+            tree = store.readObject(treeId, Tree.class);
+            CACHE.put(treeId, tree);
+        }
+        return tree;
+    }
+
+    /** Stores this node and returns its ID. */
+    private String write() {
+        byte[] contents = Codec.encode(this);
+        String id = Utils.sha1("t", contents);
+        Main.getObjectStore().write(id, contents);
+        return id;
+    }
+
+    /** Map from file names to blob IDs, if this is a leaf. */
+    private TreeMap<String, String> _entries;
+
+    /** IDs of the subtrees, null where empty, if this is an inner
+     * node. */
+    private String[] _children;
+
+    /** Numbers of files in the subtrees, if this is an inner node. */
+    private int[] _sizes;
+
+    /** Number of files in this tree. */
+    private int _size;
+
+}